@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Supplies the bytes of class files to an {@link EvictingClassLoader}.
+ * @author rex
+ */
+public interface ClassBytesSource {
+
+  /**
+   * Read a class file (or any resource).
+   * @param resourceName slash separated resource name, such as "java/lang/Object.class".
+   * @return the complete contents of the resource, or null if this source does not contain it.
+   * @throws IOException if the resource exists but could not be read.
+   */
+  byte[] read(String resourceName) throws IOException;
+
+  /**
+   * The source an {@link EvictingClassLoader} uses when none is specified.  If the loader is the system class loader
+   * the classpath is read directly, otherwise resources are requested from the loader.
+   * @param loader the class loader whose view of the class files should be read.
+   * @return a source equivalent to reading resources from the loader.
+   */
+  static ClassBytesSource forLoader(ClassLoader loader) {
+    if (loader == ClassLoader.getSystemClassLoader()) {
+      return ClasspathClassBytesSource.systemClasspath();
+    }
+    return resourcesOf(loader);
+  }
+
+  /**
+   * A source backed by {@link ClassLoader#getResourceAsStream(String)}.
+   * @param loader the loader to request resources from.
+   * @return a source reading through the loader's resource lookup.
+   */
+  static ClassBytesSource resourcesOf(ClassLoader loader) {
+    return resourceName -> {
+      InputStream stream = loader.getResourceAsStream(resourceName);
+      if (stream == null) {
+        return null;
+      }
+      try (InputStream in = stream) {
+        return in.readAllBytes();
+      }
+    };
+  }
+}
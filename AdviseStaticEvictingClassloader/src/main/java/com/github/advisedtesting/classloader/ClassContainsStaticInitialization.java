@@ -23,8 +23,11 @@
 package com.github.advisedtesting.classloader;
 
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
 import org.springframework.asm.AnnotationVisitor;
@@ -35,13 +38,45 @@ import org.springframework.asm.Handle;
 import org.springframework.asm.Label;
 import org.springframework.asm.MethodVisitor;
 import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
 import org.springframework.asm.TypePath;
 
+/**
+ * <p>
+ * Finds the static state of a class: static fields other than constants, enumeration values and assertion support, and
+ * static initializers doing more than enable the assert keyword.
+ * </p>
+ * <p>
+ * A static final field may also be assigned a value known to be immutable by the static initializer, the result of a
+ * logger lookup, {@link java.util.regex.Pattern#compile(String)}, {@link List#of()}, {@link java.util.Set#of()},
+ * {@link java.util.Map#of()}, or {@link java.util.Collections#emptyList()} and its siblings, called with literal, class
+ * literal or likewise immutable arguments.
+ * </p>
+ * <p>
+ * Safe to share between loading threads, each thread reuses its own visitors, and the returned {@link Verdict}s are
+ * immutable.
+ * </p>
+ * @author rex
+ */
 public class ClassContainsStaticInitialization implements Function<String, List<String>> {
 
+  /**
+   * Must be incremented whenever the rules change, as persisted verdicts are keyed by it, see {@link VerdictStore}.
+   */
+  public static final int SCANNER_VERSION = 3;
+
+  /**
+   * The ASM api level of the scanner, other parsers in this package use it to accept the same class file versions.
+   */
+  static final int ASM_API_VERSION = getVersionOpcode();
+
   private final int versionOpcode;
+
+  private final boolean failFast;
+
+  private final ThreadLocal<UnsafeClassVistor> visitors;
   
-  private int getVersionOpcode() {
+  private static int getVersionOpcode() {
     try {
         if (Opcodes.class.getField("ASM7") != null) {
           return Opcodes.ASM7;
@@ -65,46 +100,204 @@ public class ClassContainsStaticInitialization implements Function<String, List<
   }
   
   public ClassContainsStaticInitialization() {
-    this.versionOpcode = getVersionOpcode();
+    this(false);
+  }
+
+  /**
+   * <p>
+   * A fail fast scanner skips debug information and stack map frames, and stops at the first violation, so at most one
+   * error is returned.  Use it where the class will be evicted regardless of how many violations it has.
+   * </p>
+   * <p>
+   * In either mode error messages are only formatted when they are read from the returned list.
+   * </p>
+   * @param failFast true to stop at the first violation.
+   */
+  public ClassContainsStaticInitialization(boolean failFast) {
+    this.versionOpcode = ASM_API_VERSION;
+    this.failFast = failFast;
+    this.visitors = ThreadLocal.withInitial(() -> new UnsafeClassVistor(versionOpcode, failFast));
+  }
+
+  public boolean isFailFast() {
+    return failFast;
   }
 
   @Override
-  public List<String> apply(String className) {
+  public Verdict apply(String className) {
     ClassReader reader;
     try {
       reader = new ClassReader(className);
-      UnsafeClassVistor visitor = new UnsafeClassVistor(versionOpcode);
-      reader.accept(visitor, 0);
-      return visitor.getErrors();
+      return scan(reader);
     } catch (IOException ioe) {
       throw new IllegalArgumentException("Class is not readable " + className.replace('/', '.'), ioe);
     }
   }
   
-  public List<String> apply(byte[] bytes) {
-    ClassReader reader;
-    reader = new ClassReader(bytes);
-    UnsafeClassVistor visitor = new UnsafeClassVistor(versionOpcode);
-    reader.accept(visitor, 0);
-    return visitor.getErrors();
+  /**
+   * Scan class file bytes, classes that {@link ClassFilePreFilter} proves clean are not visited at all.
+   * @param bytes a class file.
+   * @return the violations found, empty if the class is safe to load.
+   */
+  public Verdict apply(byte[] bytes) {
+    if (ClassFilePreFilter.isDefinitelyClean(bytes)) {
+      return Verdict.CLEAN;
+    }
+    return scan(new ClassReader(bytes));
+  }
+
+  private Verdict scan(ClassReader reader) {
+    UnsafeClassVistor visitor = visitors.get();
+    if (visitor.scanning) {
+      //only if a scan is reentered on this thread.
+      visitor = new UnsafeClassVistor(versionOpcode, failFast);
+    }
+    visitor.reset();
+    try {
+      reader.accept(visitor, failFast ? ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES : 0);
+    } catch (FirstViolationFound found) {
+      //fail fast, the remainder of the class is irrelevant.
+    } finally {
+      visitor.scanning = false;
+    }
+    return visitor.getVerdict();
+  }
+
+  /**
+   * Thrown through {@link ClassReader#accept(ClassVisitor, int)} to stop reading a class, carries no stack trace.
+   */
+  private static final class FirstViolationFound extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private FirstViolationFound() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * <p>
+   * The violations found in a class, their kinds as bits and the offending static fields by name.  Messages are only
+   * formatted when the verdict is read as a list, in the order the violations were found.
+   * </p>
+   * <p>
+   * Immutable, clean classes all share {@link #CLEAN}.
+   * </p>
+   */
+  public static final class Verdict extends AbstractList<String> {
+
+    /**
+     * Bit set if the class has a disallowed static field.
+     */
+    public static final int STATIC_FIELD = 1;
+
+    /**
+     * Bit set if the class has a disallowed static initializer.
+     */
+    public static final int STATIC_INIT = 2;
+
+    public static final Verdict CLEAN = new Verdict(null, new String[0]);
+
+    private static final String STATIC_FIELD_MESSAGE = "Disallowed static field with name \"";
+
+    private static final String STATIC_INIT_MESSAGE = "Disallowed <cinit> method (does more than enable the assert keyword)";
+
+    private final String className;
+
+    /**
+     * Field names in the order found, null for the static initializer.
+     */
+    private final String[] violations;
+
+    private final int kinds;
+
+    private Verdict(String className, String[] violations) {
+      this.className = className;
+      this.violations = violations;
+      int found = 0;
+      for (String fieldName : violations) {
+        found |= fieldName == null ? STATIC_INIT : STATIC_FIELD;
+      }
+      this.kinds = found;
+    }
+
+    /**
+     * Kinds of violation found.
+     * @return {@link #STATIC_FIELD} and {@link #STATIC_INIT} bits, 0 if the class is clean.
+     */
+    public int getKinds() {
+      return kinds;
+    }
+
+    /**
+     * Disallowed static fields.
+     * @return names of the fields, in the order found.
+     */
+    public List<String> getFieldNames() {
+      List<String> fieldNames = new ArrayList<>(violations.length);
+      for (String fieldName : violations) {
+        if (fieldName != null) {
+          fieldNames.add(fieldName);
+        }
+      }
+      return fieldNames;
+    }
+
+    @Override
+    public String get(int index) {
+      String fieldName = violations[index];
+      String prefix = fieldName == null ? STATIC_INIT_MESSAGE : STATIC_FIELD_MESSAGE + fieldName + "\"";
+      return prefix + " on class: " + className.replace('/', '.');
+    }
+
+    @Override
+    public int size() {
+      return violations.length;
+    }
   }
  
   /**
-   * Not thread safe.
+   * Not thread safe, reused by one thread for one class at a time, see {@link #reset()}.
    * 
    * @author rex
    */
   private static class UnsafeClassVistor extends ClassVisitor {
     
-    private String className;
-    
     private boolean isEnumeration = false; //enumerations can not avoid static member variables -- just make sure they are final.
     
-    private final List<String> errors;
+    private final List<String> errors = new ArrayList<>(2);
+
+    private final boolean failFast;
+
+    private final UnsafeStaticInitVistor staticInitVisitor;
+
+    private String className;
+
+    private boolean scanning;
+
+    /**
+     * Static final fields without a literal value, allowed only if the static initializer assigns them an immutable value.
+     */
+    private final List<String> pendingFinals = new ArrayList<>();
+
+    private boolean pendingFinalsChecked;
     
-    public UnsafeClassVistor(int api) {
+    public UnsafeClassVistor(int api, boolean failFast) {
       super(api);
-      errors = new ArrayList<>();
+      this.failFast = failFast;
+      this.staticInitVisitor = new UnsafeStaticInitVistor(api, this);
+    }
+
+    /**
+     * Forget the previous class, before visiting the next.
+     */
+    private void reset() {
+      scanning = true;
+      isEnumeration = false;
+      className = null;
+      errors.clear();
+      pendingFinals.clear();
+      pendingFinalsChecked = false;
     }
     
     @Override
@@ -132,7 +325,11 @@ public class ClassContainsStaticInitialization implements Function<String, List<
           && !(isStaticFinalEnumeration(access)
                || isStaticFinalLiteral(access, value)
                || isAssertionSupport(name))) {
-        addError("Disallowed static field with name \"" + name + "\"");
+        if (isFinal(access)) {
+          pendingFinals.add(name);
+        } else {
+          addError(name);
+        }
       }
       return super.visitField(access, name, desc, signature, value);
     }
@@ -157,18 +354,41 @@ public class ClassContainsStaticInitialization implements Function<String, List<
     public MethodVisitor visitMethod(int access, String name, 
                               String desc, String signature, String[] exceptions) {
       if (!isEnumeration && "<clinit>".equals(name)) {
-        return new UnsafeStaticInitVistor(this.api, this);
+        staticInitVisitor.reset();
+        return staticInitVisitor;
       }
       return super.visitMethod(access, name, desc, signature, exceptions);
     }
+
+    @Override
+    public void visitEnd() {
+      checkPendingFinals();
+    }
+
+    /**
+     * Static final fields not assigned an immutable value by the static initializer are violations, in field order.
+     */
+    private void checkPendingFinals() {
+      if (!pendingFinalsChecked) {
+        pendingFinalsChecked = true;
+        for (String fieldName : pendingFinals) {
+          addError(fieldName);
+        }
+      }
+    }
     
-    public List<String> getErrors() {
-      return errors;
+    public Verdict getVerdict() {
+      return errors.isEmpty() ? Verdict.CLEAN : new Verdict(className, errors.toArray(new String[0]));
     }
     
-    public void addError(String error) {
-      if (errors != null) {
-        this.errors.add(error + " on class: " + className.replace('/', '.'));
+    /**
+     * Record a violation.
+     * @param fieldName the offending static field, or null for a disallowed static initializer.
+     */
+    public void addError(String fieldName) {
+      errors.add(fieldName);
+      if (failFast) {
+        throw new FirstViolationFound();
       }
     }
     
@@ -186,100 +406,252 @@ public class ClassContainsStaticInitialization implements Function<String, List<
    * is constructed and set in this way.
    * </p>
    * <p>
+   * The only other allowed assignments are of immutable values to the class's own static final fields.  Values are
+   * followed through the operand stack from literals, through calls to known immutable factories, to the field, in
+   * straight line code.  Anything else on the stack, or a branch, loses track of the values and so evicts the class.
+   * </p>
+   * <p>
    * Should only be used to validate &lt;cinit&gt; methods.
    * </p>
    * @author rex
    */
   public static class UnsafeStaticInitVistor extends MethodVisitor {
 
+    private static final int OTHER = 0;
+
+    private static final int CONSTANT = 1;
+
+    private static final int CLASS_LITERAL = 2;
+
+    private static final int IMMUTABLE = 3;
+
+    private static final int MAX_TRACKED_DEPTH = 32;
+
+    /**
+     * Static methods, by owner and name, returning immutable values when their arguments are.
+     */
+    private static final Set<String> IMMUTABLE_FACTORIES = Set.of(
+        "org/slf4j/LoggerFactory.getLogger", "org/apache/commons/logging/LogFactory.getLog",
+        "org/apache/logging/log4j/LogManager.getLogger", "java/util/logging/Logger.getLogger",
+        "java/util/regex/Pattern.compile", "java/util/List.of", "java/util/Set.of", "java/util/Map.of",
+        "java/util/Collections.emptyList", "java/util/Collections.emptySet", "java/util/Collections.emptyMap");
+
+    private static final Set<String> BOXES = Set.of("java/lang/Boolean", "java/lang/Byte", "java/lang/Character",
+        "java/lang/Short", "java/lang/Integer", "java/lang/Long", "java/lang/Float", "java/lang/Double");
+
     private boolean shouldEvict = false;
     
     private final UnsafeClassVistor visitor;
+
+    private final int[] stack = new int[MAX_TRACKED_DEPTH];
+
+    private int depth;
+
+    private final Set<Label> jumpTargets = new HashSet<>();
     
     public UnsafeStaticInitVistor(int api, UnsafeClassVistor visitor) {
       super(api);
       this.visitor = visitor;
     }
+
+    private void reset() {
+      shouldEvict = false;
+      depth = 0;
+      jumpTargets.clear();
+    }
+
+    private void push(int value) {
+      if (depth == MAX_TRACKED_DEPTH) {
+        depth = 0;
+      }
+      stack[depth++] = value;
+    }
+
+    private int pop() {
+      return depth == 0 ? OTHER : stack[--depth];
+    }
+
+    /**
+     * Class literals may only be passed on, as a class is not immutable.
+     */
+    private static boolean isAssignable(int value) {
+      return value == CONSTANT || value == IMMUTABLE;
+    }
+
+    /**
+     * Pop a call's arguments.
+     * @return true if every argument is a literal, class literal, or immutable.
+     */
+    private boolean popArguments(String desc) {
+      boolean known = true;
+      for (int arguments = Type.getArgumentTypes(desc).length; arguments > 0; arguments--) {
+        known &= pop() != OTHER;
+      }
+      return known;
+    }
     
 
+    /**
+     * Mark the method for eviction, in fail fast mode the class visitor stops the scan immediately.
+     */
+    private void evict() {
+      shouldEvict = true;
+      if (visitor.failFast) {
+        visitor.addError(null);
+      }
+    }
+
     @Override
     public void visitFieldInsn(int opcode, String owner, String name, String desc) {
-      shouldEvict = shouldEvict 
-              || opcode != Opcodes.PUTSTATIC
-              || !"$assertionsDisabled".equals(name);
+      if (opcode == Opcodes.PUTSTATIC && "$assertionsDisabled".equals(name)) {
+        depth = 0;
+      } else if (opcode != Opcodes.PUTSTATIC || !owner.equals(visitor.className) || !isAssignable(pop())
+          || !visitor.pendingFinals.remove(name)) {
+        evict();
+      }
       super.visitFieldInsn(opcode, owner, name, desc);
     }
 
+    @Override
+    public void visitInsn(int opcode) {
+      if (opcode >= Opcodes.ACONST_NULL && opcode <= Opcodes.DCONST_1) {
+        push(CONSTANT);
+      } else {
+        depth = 0;
+      }
+      super.visitInsn(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+      if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+        push(CONSTANT);
+      } else {
+        depth = 0;
+      }
+      super.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+      if (value instanceof String || value instanceof Number) {
+        push(CONSTANT);
+      } else if (value instanceof Type && ((Type) value).getSort() >= Type.ARRAY) {
+        push(CLASS_LITERAL);
+      } else {
+        push(OTHER);
+      }
+      super.visitLdcInsn(value);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+      depth = 0;
+      jumpTargets.add(label);
+      super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+      if (jumpTargets.contains(label)) {
+        depth = 0;
+      }
+      super.visitLabel(label);
+    }
+
+    /**
+     * Local variables are also caught by {@link #visitLocalVariable}, but only if the class was compiled with debug
+     * information, and never by a fail fast scan.
+     */
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+      evict();
+      super.visitVarInsn(opcode, var);
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+      evict();
+      super.visitIincInsn(var, increment);
+    }
+
     @Override
     public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
-      shouldEvict = true;
+      evict();
       super.visitLocalVariable(name, desc, signature, start, end, index);
     }
     
     @Override
     public void visitEnd() {
+      visitor.checkPendingFinals();
       if (shouldEvict) {
-        visitor.addError("Disallowed <cinit> method (does more than enable the assert keyword)");
+        visitor.addError(null);
       }
     }
 
     @Override
     public void visitTypeInsn(int opcode, String type) {
-      shouldEvict = true;
+      evict();
       super.visitTypeInsn(opcode, type);
     }
 
     @Override
     public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
-      // TODO Auto-generated method stub
-      shouldEvict = shouldEvict 
-          || opcode != Opcodes.INVOKEVIRTUAL
+      if (opcode == Opcodes.INVOKESTATIC && IMMUTABLE_FACTORIES.contains(owner + '.' + name) && popArguments(desc)) {
+        push(IMMUTABLE);
+      } else if (opcode == Opcodes.INVOKESTATIC && BOXES.contains(owner) && "valueOf".equals(name) && popArguments(desc)) {
+        push(CONSTANT);
+      } else if (opcode != Opcodes.INVOKEVIRTUAL
           || !"java/lang/Class".equals(owner)
           || !"desiredAssertionStatus".equals(name)
-          || !"()Z".equals(desc);
+          || !"()Z".equals(desc)) {
+        evict();
+      } else {
+        depth = 0;
+      }
       super.visitMethodInsn(opcode, owner, name, desc, itf);
     }
 
     @Override
     public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
-      shouldEvict = true;
+      evict();
       super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
     }
 
     @Override
     public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
-      shouldEvict = true;
+      evict();
       super.visitTableSwitchInsn(min, max, dflt, labels);
     }
 
     @Override
     public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
-      shouldEvict = true;
+      evict();
       super.visitLookupSwitchInsn(dflt, keys, labels);
     }
 
     @Override
     public void visitMultiANewArrayInsn(String desc, int dims) {
-      shouldEvict = true;
+      evict();
       super.visitMultiANewArrayInsn(desc, dims);
     }
 
     @Override
     public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
-      shouldEvict = true;
+      evict();
       super.visitTryCatchBlock(start, end, handler, type);
     }
 
     @Override
     public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-      shouldEvict = true;
+      evict();
       return super.visitTryCatchAnnotation(typeRef, typePath, desc, visible);
     }
 
     @Override
     public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index,
             String desc, boolean visible) {
-      shouldEvict = true;
+      evict();
       return super.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, desc, visible);
     }
 
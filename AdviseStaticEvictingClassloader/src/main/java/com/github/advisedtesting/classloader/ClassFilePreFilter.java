@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+/**
+ * <p>
+ * Reads just the constant pool, fields and methods tables of a class file to prove a class clean without building any
+ * ASM visitors.  A class is definitely clean when it declares no &lt;clinit&gt; method and every static field is either
+ * synthetic or a final compile time constant (has a ConstantValue attribute), most classes on a classpath qualify.
+ * </p>
+ * <p>
+ * Anything else, including bytes this reader does not understand, is left to {@link ClassContainsStaticInitialization}'s
+ * visitors.
+ * </p>
+ * @author rex
+ */
+final class ClassFilePreFilter {
+
+  static final int MAGIC = 0xCAFEBABE;
+
+  static final byte UTF8 = 1;
+
+  private static final int ACC_STATIC = 0x0008;
+
+  private static final int ACC_FINAL = 0x0010;
+
+  private static final int ACC_SYNTHETIC = 0x1000;
+
+  private static final byte[] CLINIT = {'<', 'c', 'l', 'i', 'n', 'i', 't', '>'};
+
+  private static final byte[] CONSTANT_VALUE = {'C', 'o', 'n', 's', 't', 'a', 'n', 't', 'V', 'a', 'l', 'u', 'e'};
+
+  private ClassFilePreFilter() {
+  }
+
+  /**
+   * Cheap check run before a full scan.
+   * @param bytes a class file.
+   * @return true only if the class cannot hold static state, false means a full scan is needed.
+   */
+  static boolean isDefinitelyClean(byte[] bytes) {
+    try {
+      return new Reader(bytes).isClean();
+    } catch (IndexOutOfBoundsException malformed) {
+      return false;
+    }
+  }
+
+  /**
+   * Size of a constant pool entry.
+   * @param bytes a class file.
+   * @param offset of the entry's tag.
+   * @return the length of the entry including its tag, or -1 if the tag is not one this reader understands.
+   */
+  static int constantLength(byte[] bytes, int offset) {
+    switch (bytes[offset]) {
+      case UTF8:
+        return 3 + (((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] & 0xFF));
+      case 7: //class
+      case 8: //string
+      case 16: //method type
+      case 19: //module
+      case 20: //package
+        return 3;
+      case 15: //method handle
+        return 4;
+      case 3: //integer
+      case 4: //float
+      case 9: //field ref
+      case 10: //method ref
+      case 11: //interface method ref
+      case 12: //name and type
+      case 17: //dynamic
+      case 18: //invoke dynamic
+        return 5;
+      case 5: //long
+      case 6: //double
+        return 9;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Long and double constants take up two constant pool indexes.
+   * @param tag of a constant pool entry.
+   * @return true if the entry after this one has an index two greater.
+   */
+  static boolean isTwoSlots(int tag) {
+    return tag == 5 || tag == 6;
+  }
+
+  /**
+   * Single use cursor over a class file, offsets of utf8 constants are kept so names are compared without decoding.
+   */
+  private static final class Reader {
+
+    private final byte[] bytes;
+
+    private int[] utf8Offsets;
+
+    private int position;
+
+    private Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    private boolean isClean() {
+      if (readInt() != MAGIC) {
+        return false;
+      }
+      position += 4; //minor and major version
+      if (!readConstantPool()) {
+        return false;
+      }
+      position += 6; //access flags, this class, super class
+      int interfaceCount = readUnsignedShort();
+      position += 2 * interfaceCount;
+      int fieldCount = readUnsignedShort();
+      for (int i = 0; i < fieldCount; i++) {
+        int access = readUnsignedShort();
+        position += 4; //name and descriptor
+        boolean constant = false;
+        int attributeCount = readUnsignedShort();
+        for (int j = 0; j < attributeCount; j++) {
+          constant |= utf8Equals(readUnsignedShort(), CONSTANT_VALUE);
+          skipAttributeBody();
+        }
+        if ((access & ACC_STATIC) != 0 
+            && (access & ACC_SYNTHETIC) == 0
+            && !((access & ACC_FINAL) != 0 && constant)) {
+          return false;
+        }
+      }
+      int methodCount = readUnsignedShort();
+      for (int i = 0; i < methodCount; i++) {
+        position += 2; //access flags
+        if (utf8Equals(readUnsignedShort(), CLINIT)) {
+          return false;
+        }
+        position += 2; //descriptor
+        int attributeCount = readUnsignedShort();
+        for (int j = 0; j < attributeCount; j++) {
+          position += 2; //name
+          skipAttributeBody();
+        }
+      }
+      return true;
+    }
+
+    private boolean readConstantPool() {
+      int count = readUnsignedShort();
+      utf8Offsets = new int[count];
+      for (int index = 1; index < count; index++) {
+        if (bytes[position] == UTF8) {
+          utf8Offsets[index] = position + 1;
+        }
+        int length = constantLength(bytes, position);
+        if (length < 0) {
+          return false;
+        }
+        if (isTwoSlots(bytes[position])) {
+          index++;
+        }
+        position += length;
+      }
+      return true;
+    }
+
+    private void skipAttributeBody() {
+      int length = readInt();
+      if (length < 0) {
+        throw new IndexOutOfBoundsException("Attribute length " + length);
+      }
+      position += length;
+    }
+
+    private boolean utf8Equals(int index, byte[] expected) {
+      int offset = utf8Offsets[index];
+      if (offset == 0 || readUnsignedShortAt(offset) != expected.length) {
+        return false;
+      }
+      for (int i = 0; i < expected.length; i++) {
+        if (bytes[offset + 2 + i] != expected[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int readUnsignedShortAt(int offset) {
+      return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private int readUnsignedShort() {
+      int value = readUnsignedShortAt(position);
+      position += 2;
+      return value;
+    }
+
+    private int readInt() {
+      int value = (readUnsignedShortAt(position) << 16) | readUnsignedShortAt(position + 2);
+      position += 4;
+      return value;
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Watches the exploded directories of a {@link ClasspathClassBytesSource}, such as an IDE's output folders, so that a
+ * long lived jvm only rescans and rereads the classes that were recompiled.
+ * </p>
+ * <p>
+ * Changes are collected on a daemon thread, batched for {@value #SETTLE_MILLIS} milliseconds as compilers write many
+ * files at once, the source's index is updated, then the listener is told that resources changed, and which classes
+ * changed.  If the platform drops events every class is reported as changed.
+ * </p>
+ * <p>
+ * Used by {@link RunInClassLoaderInterceptor} if the system property {@value #WATCH_PROPERTY} is true.
+ * </p>
+ * @author rex
+ */
+public class ClassFileWatcher implements Closeable {
+
+  /**
+   * System property, if true the interceptor watches the classpath directories.
+   */
+  public static final String WATCH_PROPERTY = "advisedtesting.classloader.watchClassDirectories";
+
+  public static final long SETTLE_MILLIS = 50;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClassFileWatcher.class);
+
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final ClasspathClassBytesSource source;
+
+  private final Listener listener;
+
+  private final WatchService watchService;
+
+  private final Map<WatchKey, Path[]> directoryAndRootByKey = new ConcurrentHashMap<>();
+
+  /**
+   * Told which classes have changed.
+   */
+  @FunctionalInterface
+  public interface Listener {
+
+    /**
+     * Called on the watcher's thread after the class bytes source has been brought up to date.
+     * @param changed matches the binary names of the classes that were created, changed or deleted.
+     */
+    void classesChanged(Predicate<String> changed);
+
+    /**
+     * Called on the watcher's thread, before {@link #classesChanged(Predicate)}, whenever any file in the directories was
+     * created, changed or deleted, class file or not.
+     */
+    default void resourcesChanged() {
+    }
+  }
+
+  /**
+   * Start watching.
+   * @param source whose directories are watched, and whose index is kept up to date.
+   * @param listener told which classes changed.
+   * @throws IOException if the directories can not be watched.
+   */
+  public ClassFileWatcher(ClasspathClassBytesSource source, Listener listener) throws IOException {
+    this.source = source;
+    this.listener = listener;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    for (Path root : source.getDirectories()) {
+      register(root, root, new HashSet<>());
+    }
+    Thread thread = new Thread(this::watch, "advisedtesting-classloader-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * A watcher of the jvm's classpath, if {@value #WATCH_PROPERTY} is true.
+   * @param listener told which classes changed.
+   * @return the watcher, or null if not enabled or the directories can not be watched.
+   */
+  public static ClassFileWatcher fromSystemProperties(Listener listener) {
+    if (!Boolean.getBoolean(WATCH_PROPERTY)) {
+      return null;
+    }
+    try {
+      return new ClassFileWatcher(ClasspathClassBytesSource.systemClasspath(), listener);
+    } catch (IOException ioe) {
+      LOGGER.warn("Class directories will not be watched", ioe);
+      return null;
+    }
+  }
+
+  /**
+   * Register a directory and its sub directories.
+   * @param created collects the class files already present, for directories created after watching started.
+   */
+  private void register(Path directory, Path root, Set<String> created) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.forEach(file -> {
+        try {
+          if (Files.isDirectory(file)) {
+            WatchKey key = file.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            directoryAndRootByKey.put(key, new Path[] {file, root});
+          } else {
+            addClassFile(root, file, created);
+          }
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Set<String> changed = new HashSet<>();
+        boolean overflowed = false;
+        Set<Path> touched = new HashSet<>();
+        while (key != null) {
+          overflowed |= collect(key, changed, touched);
+          key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (overflowed || !touched.isEmpty()) {
+          listener.resourcesChanged();
+        }
+        if (overflowed) {
+          source.getDirectories().forEach(root -> reindex(root));
+          listener.classesChanged(className -> true);
+        } else if (!changed.isEmpty()) {
+          changed.forEach(className -> source.invalidate(className.replace('.', '/') + CLASS_SUFFIX));
+          listener.classesChanged(changed::contains);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException ex) {
+      //closed.
+    }
+  }
+
+  /**
+   * Gather the class names, and all the files, of a key's events.
+   * @return true if events were lost.
+   */
+  private boolean collect(WatchKey key, Set<String> changed, Set<Path> touched) {
+    Path[] directoryAndRoot = directoryAndRootByKey.get(key);
+    boolean overflowed = directoryAndRoot == null;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || directoryAndRoot == null) {
+        overflowed = true;
+        continue;
+      }
+      Path file = directoryAndRoot[0].resolve((Path) event.context());
+      touched.add(file);
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+        try {
+          register(file, directoryAndRoot[1], changed);
+        } catch (IOException ioe) {
+          overflowed = true;
+        }
+      } else {
+        addClassFile(directoryAndRoot[1], file, changed);
+      }
+    }
+    if (!key.reset()) {
+      directoryAndRootByKey.remove(key);
+    }
+    return overflowed;
+  }
+
+  private void reindex(Path root) {
+    try (Stream<Path> files = Files.walk(root)) {
+      files.filter(file -> file.getFileName().toString().endsWith(CLASS_SUFFIX))
+           .forEach(file -> source.invalidate(root.relativize(file).toString().replace(File.separatorChar, '/')));
+    } catch (IOException | UncheckedIOException ex) {
+      LOGGER.debug("Could not reindex " + root, ex);
+    }
+  }
+
+  private static void addClassFile(Path root, Path file, Set<String> classNames) {
+    String resourceName = root.relativize(file).toString().replace(File.separatorChar, '/');
+    if (resourceName.endsWith(CLASS_SUFFIX)) {
+      classNames.add(resourceName.substring(0, resourceName.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+    }
+  }
+
+  /**
+   * Stop watching.
+   */
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException ioe) {
+      LOGGER.debug("Watch service already closed", ioe);
+    }
+  }
+}
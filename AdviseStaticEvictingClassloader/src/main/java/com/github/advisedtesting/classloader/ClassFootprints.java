@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * The classes each test loaded, recorded so that the next run can define them on background threads before the tests
+ * need them.
+ * </p>
+ * <p>
+ * Footprints are kept in a file per class loader configuration, in the {@value #DIRECTORY} directory of
+ * {@value VerdictStore#CACHE_DIR_PROPERTY}.  A file lists tests in the order they first ran, each test's line
+ * ("# test") followed by the binary names of the classes loaded while it ran, so preloading keeps ahead of the tests.  A
+ * test's footprint only grows, classes defined in the background are not seen again when the test uses them.
+ * </p>
+ * <p>
+ * Files are replaced when the footprints are closed, parallel forks sharing a directory keep the footprints of the last
+ * fork to close.
+ * </p>
+ * @author rex
+ */
+public class ClassFootprints implements Closeable {
+
+  public static final String DIRECTORY = "footprints";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClassFootprints.class);
+
+  private static final String TEST_PREFIX = "# ";
+
+  private final Path directory;
+
+  private final Map<String, Map<String, Set<String>>> testsByConfiguration = new ConcurrentHashMap<>();
+
+  private final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Footprints read from, and written to, a directory.
+   * @param directory holds a file per configuration, created when footprints are first written.
+   */
+  public ClassFootprints(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Footprints kept in the directory named by {@value VerdictStore#CACHE_DIR_PROPERTY}.
+   * @return the footprints, or null if the property is not set.
+   */
+  public static ClassFootprints fromSystemProperties() {
+    String cacheDir = System.getProperty(VerdictStore.CACHE_DIR_PROPERTY);
+    if (cacheDir == null || cacheDir.isEmpty()) {
+      return null;
+    }
+    return new ClassFootprints(Paths.get(cacheDir, DIRECTORY));
+  }
+
+  /**
+   * Classes to define ahead of the tests of a configuration.
+   * @param configuration identifies the class loader configuration, stable between runs.
+   * @return binary names in the order the tests first loaded them, without duplicates.
+   */
+  public List<String> recorded(String configuration) {
+    Map<String, Set<String>> tests = tests(configuration);
+    Set<String> classNames = new LinkedHashSet<>();
+    synchronized (tests) {
+      tests.values().forEach(classNames::addAll);
+    }
+    return new ArrayList<>(classNames);
+  }
+
+  /**
+   * Add classes to a test's footprint.
+   * @param configuration identifies the class loader configuration the test ran in.
+   * @param test identifies the test, stable between runs.
+   * @param classNames binary names of classes loaded while the test ran.
+   */
+  public void record(String configuration, String test, Collection<String> classNames) {
+    Map<String, Set<String>> tests = tests(configuration);
+    synchronized (tests) {
+      boolean added = !tests.containsKey(test);
+      added |= tests.computeIfAbsent(test, key -> new LinkedHashSet<>()).addAll(classNames);
+      if (added) {
+        changed.add(configuration);
+      }
+    }
+  }
+
+  /**
+   * Write the footprints of configurations recorded since they were read.  Failure to write is logged, not thrown.
+   */
+  @Override
+  public void close() {
+    for (String configuration : new ArrayList<>(changed)) {
+      changed.remove(configuration);
+      write(configuration, tests(configuration));
+    }
+  }
+
+  private Map<String, Set<String>> tests(String configuration) {
+    return testsByConfiguration.computeIfAbsent(configuration, key -> read(fileOf(key)));
+  }
+
+  private Path fileOf(String configuration) {
+    return directory.resolve(VerdictStore.keyOf(configuration.getBytes(StandardCharsets.UTF_8)) + ".txt");
+  }
+
+  private static Map<String, Set<String>> read(Path file) {
+    Map<String, Set<String>> tests = Collections.synchronizedMap(new LinkedHashMap<>());
+    if (!Files.exists(file)) {
+      return tests;
+    }
+    try {
+      Set<String> classNames = null;
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (line.startsWith(TEST_PREFIX)) {
+          classNames = tests.computeIfAbsent(line.substring(TEST_PREFIX.length()), key -> new LinkedHashSet<>());
+        } else if (classNames != null && !line.isEmpty()) {
+          classNames.add(line);
+        }
+      }
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not read class footprints " + file, ioe);
+    }
+    return tests;
+  }
+
+  private void write(String configuration, Map<String, Set<String>> tests) {
+    List<String> lines = new ArrayList<>();
+    synchronized (tests) {
+      for (Map.Entry<String, Set<String>> test : tests.entrySet()) {
+        lines.add(TEST_PREFIX + test.getKey());
+        lines.addAll(test.getValue());
+      }
+    }
+    Path file = fileOf(configuration);
+    try {
+      Files.createDirectories(directory);
+      Path written = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      Files.write(written, lines, StandardCharsets.UTF_8);
+      Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not write class footprints " + file, ioe);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Tracks {@link EvictingClassLoader}s to find those still reachable after the scope they served has ended, a loader's
+ * scope ends when it is closed or explicitly {@link #released(EvictingClassLoader)}.  A retained loader keeps every
+ * class it defined, and their static state, in metaspace.
+ * </p>
+ * <p>
+ * Loaders are tracked through weak references registered with a {@link ReferenceQueue}, a phantom reference would
+ * serve as well to detect collection, but a weak reference can still be followed to describe a loader that leaked.
+ * Nothing here strongly references a loader, so tracking can not cause the leaks it reports.
+ * </p>
+ * <p>
+ * The likely retainers reported are threads whose context class loader is the leaked loader, and threads that are
+ * instances of a class it defined.  Thread locals, shutdown hooks and caches in delegated libraries (a Spring context
+ * for instance) can not be seen from here, a heap dump's path to gc roots is needed for those.
+ * </p>
+ * @author rex
+ */
+public class ClassLoaderLeakDetector {
+
+  private final ReferenceQueue<EvictingClassLoader> collected = new ReferenceQueue<>();
+
+  private final Map<Reference<EvictingClassLoader>, Tracked> tracked = new ConcurrentHashMap<>();
+
+  /**
+   * Start tracking a loader.
+   * @param loader a newly built loader.
+   * @param scope describes what the loader serves, included in the report.
+   */
+  public void track(EvictingClassLoader loader, String scope) {
+    expungeCollected();
+    Tracked entry = new Tracked(loader, scope, collected);
+    tracked.put(entry.reference, entry);
+  }
+
+  /**
+   * Mark the end of a loader's scope, for loaders that are discarded without being closed.
+   * @param loader a tracked loader.
+   */
+  public void released(EvictingClassLoader loader) {
+    for (Tracked entry : tracked.values()) {
+      if (entry.reference.get() == loader) {
+        entry.releasedAt = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Number of tracked loaders not yet garbage collected, whether or not their scope has ended.
+   * @return loaders in memory.
+   */
+  public int liveCount() {
+    expungeCollected();
+    int live = 0;
+    for (Tracked entry : tracked.values()) {
+      if (entry.reference.get() != null) {
+        live++;
+      }
+    }
+    return live;
+  }
+
+  /**
+   * Loaders whose scope ended but that have not been garbage collected.  No collection is triggered, shortly after a
+   * scope ends a loader will be reported simply because the collector has not run, see {@link #awaitCollection(long)}.
+   * @return the retained loaders, most classes defined first.
+   */
+  public List<Leak> report() {
+    expungeCollected();
+    List<Thread> threads = new ArrayList<>(Thread.getAllStackTraces().keySet());
+    List<Leak> leaks = new ArrayList<>();
+    long now = System.nanoTime();
+    for (Tracked entry : tracked.values()) {
+      EvictingClassLoader loader = entry.reference.get();
+      if (loader != null && (entry.releasedAt != 0 || loader.isClosed())) {
+        if (entry.releasedAt == 0) {
+          entry.releasedAt = now;
+        }
+        ClassLoadingMetrics.Snapshot metrics = loader.getMetrics().snapshot();
+        leaks.add(new Leak(entry.scope, metrics.getClassesDefined(), loader.getDefinedBytes(),
+            TimeUnit.NANOSECONDS.toMillis(now - entry.releasedAt), retainers(loader, threads)));
+      }
+    }
+    leaks.sort((left, right) -> Long.compare(right.classesDefined, left.classesDefined));
+    return leaks;
+  }
+
+  /**
+   * Request garbage collection until no released loader remains or the timeout passes, then report.
+   * @param timeoutMillis how long to keep trying.
+   * @return the loaders still retained.
+   * @throws InterruptedException if interrupted while waiting for the collector.
+   */
+  public List<Leak> awaitCollection(long timeoutMillis) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    List<Leak> leaks = report();
+    while (!leaks.isEmpty() && System.nanoTime() < deadline) {
+      System.gc();
+      collected.remove(50);
+      leaks = report();
+    }
+    return leaks;
+  }
+
+  private void expungeCollected() {
+    Reference<? extends EvictingClassLoader> reference;
+    while ((reference = collected.poll()) != null) {
+      tracked.remove(reference);
+    }
+  }
+
+  private static List<String> retainers(EvictingClassLoader loader, List<Thread> threads) {
+    List<String> retainers = new ArrayList<>();
+    for (Thread thread : threads) {
+      if (thread.getContextClassLoader() == loader) {
+        retainers.add("context class loader of thread \"" + thread.getName() + "\"");
+      }
+      if (thread.getClass().getClassLoader() == loader) {
+        retainers.add("thread \"" + thread.getName() + "\" is a " + thread.getClass().getName());
+      }
+    }
+    return retainers;
+  }
+
+  private static final class Tracked {
+
+    private final WeakReference<EvictingClassLoader> reference;
+
+    private final String scope;
+
+    private volatile long releasedAt;
+
+    private Tracked(EvictingClassLoader loader, String scope, ReferenceQueue<EvictingClassLoader> queue) {
+      this.reference = new WeakReference<>(loader, queue);
+      this.scope = scope;
+    }
+  }
+
+  /**
+   * A loader still in memory after its scope ended.
+   */
+  public static final class Leak {
+
+    private final String scope;
+
+    private final long classesDefined;
+
+    private final long definedBytes;
+
+    private final long millisSinceRelease;
+
+    private final List<String> retainers;
+
+    private Leak(String scope, long classesDefined, long definedBytes, long millisSinceRelease, List<String> retainers) {
+      this.scope = scope;
+      this.classesDefined = classesDefined;
+      this.definedBytes = definedBytes;
+      this.millisSinceRelease = millisSinceRelease;
+      this.retainers = Collections.unmodifiableList(retainers);
+    }
+
+    public String getScope() {
+      return scope;
+    }
+
+    public long getClassesDefined() {
+      return classesDefined;
+    }
+
+    public long getDefinedBytes() {
+      return definedBytes;
+    }
+
+    public long getMillisSinceRelease() {
+      return millisSinceRelease;
+    }
+
+    /**
+     * Likely causes of the leak that could be identified, possibly none.
+     * @return descriptions of what may be retaining the loader.
+     */
+    public List<String> getRetainers() {
+      return retainers;
+    }
+
+    @Override
+    public String toString() {
+      return "Class loader for " + scope + " retained " + millisSinceRelease + "ms after release with " + classesDefined
+          + " classes (" + definedBytes + " bytes)" + (retainers.isEmpty() ? "" : ", held by " + String.join(", ", retainers));
+    }
+  }
+}
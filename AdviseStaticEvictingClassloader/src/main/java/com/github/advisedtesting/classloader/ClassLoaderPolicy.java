@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * The parts of a {@link RestrictiveClassloader} that decide how an {@link EvictingClassLoader} behaves, resolved once:
+ * the delegated packages of all its suppliers, and the effective transformer settings.
+ * </p>
+ * <p>
+ * Immutable, and equal for annotations that would build interchangeable loaders, however their suppliers are declared
+ * and whatever their test scheduling settings, so such annotations share a loader.  The string form is stable between
+ * runs and identifies the configuration in files written for later runs.
+ * </p>
+ * @author rex
+ */
+public final class ClassLoaderPolicy {
+
+  private final DelegationMatcher delegation;
+
+  private final boolean warnOnly;
+
+  private final boolean shareVerifiedClasses;
+
+  private final boolean resetStaticState;
+
+  private ClassLoaderPolicy(DelegationMatcher delegation, boolean warnOnly, boolean shareVerifiedClasses,
+          boolean resetStaticState) {
+    this.delegation = delegation;
+    this.warnOnly = warnOnly;
+    this.shareVerifiedClasses = shareVerifiedClasses;
+    this.resetStaticState = resetStaticState;
+  }
+
+  /**
+   * Instantiate the annotation's suppliers and compile their packages, plus this package if static state is reset.
+   * @param rc the annotation of a test.
+   * @return the policy of the annotation.
+   * @throws IllegalArgumentException if a supplier can not be instantiated.
+   */
+  public static ClassLoaderPolicy of(RestrictiveClassloader rc) {
+    List<String> prefixes = Stream.of(rc.delegatingPackagesSuppliers())
+        .flatMap(supplierClass -> instantiate(supplierClass).get())
+        .collect(Collectors.toCollection(ArrayList::new));
+    if (rc.resetStaticState()) {
+      //rewritten static initializers call ResettingStaticTransformer, which must be the class the loader knows.
+      prefixes.add(ResettingStaticTransformer.class.getPackage().getName());
+    }
+    DelegationMatcher delegation = DelegationMatcher.of(prefixes);
+    boolean warnOnly = !rc.resetStaticState() && rc.warnOnly() && InDeveloperEnvironment.inDev();
+    return new ClassLoaderPolicy(delegation, warnOnly, rc.shareVerifiedClasses(), rc.resetStaticState());
+  }
+
+  private static Supplier<Stream<String>> instantiate(Class<? extends Supplier<Stream<String>>> supplierClass) {
+    try {
+      return supplierClass.getDeclaredConstructor().newInstance();
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
+      throw new IllegalArgumentException("Class could not be instantiated " + supplierClass, ex);
+    }
+  }
+
+  public DelegationMatcher getDelegation() {
+    return delegation;
+  }
+
+  /**
+   * Whether violations are only logged, already false outside of a developer's environment and when resetting.
+   * @return true if classes with static state should load.
+   */
+  public boolean isWarnOnly() {
+    return warnOnly;
+  }
+
+  public boolean isShareVerifiedClasses() {
+    return shareVerifiedClasses;
+  }
+
+  public boolean isResetStaticState() {
+    return resetStaticState;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof ClassLoaderPolicy)) {
+      return false;
+    }
+    ClassLoaderPolicy policy = (ClassLoaderPolicy) other;
+    return delegation == policy.delegation && warnOnly == policy.warnOnly
+        && shareVerifiedClasses == policy.shareVerifiedClasses && resetStaticState == policy.resetStaticState;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(delegation.getPrefixes(), warnOnly, shareVerifiedClasses, resetStaticState);
+  }
+
+  @Override
+  public String toString() {
+    return "ClassLoaderPolicy[delegation=" + delegation.getPrefixes() + ", warnOnly=" + warnOnly + ", shareVerifiedClasses="
+        + shareVerifiedClasses + ", resetStaticState=" + resetStaticState + "]";
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Counters of the work done by one {@link EvictingClassLoader}.  Each counter is a {@link LongAdder}, so concurrent
+ * class loading threads update separate cells rather than contending on a single value.
+ * </p>
+ * <p>
+ * Read the counters with {@link #snapshot()}, a snapshot taken while classes are loading is not a consistent cut across
+ * counters.
+ * </p>
+ * @author rex
+ */
+public final class ClassLoadingMetrics {
+
+  private final LongAdder classesDefined = new LongAdder();
+
+  private final LongAdder bytesRead = new LongAdder();
+
+  private final LongAdder ioNanos = new LongAdder();
+
+  private final LongAdder scanNanos = new LongAdder();
+
+  private final LongAdder defineNanos = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  private final LongAdder cacheHits = new LongAdder();
+
+  void read(int bytes, long nanos) {
+    bytesRead.add(bytes);
+    ioNanos.add(nanos);
+  }
+
+  void scanned(long nanos) {
+    scanNanos.add(nanos);
+  }
+
+  void defined(long nanos) {
+    classesDefined.increment();
+    defineNanos.add(nanos);
+  }
+
+  void evicted() {
+    evictions.increment();
+  }
+
+  void cacheHit() {
+    cacheHits.increment();
+  }
+
+  public Snapshot snapshot() {
+    return new Snapshot(1, classesDefined.sum(), bytesRead.sum(), ioNanos.sum(), scanNanos.sum(), defineNanos.sum(),
+        evictions.sum(), cacheHits.sum());
+  }
+
+  /**
+   * Immutable copy of the counters of one or more class loaders, exposed over JMX as composite data.
+   */
+  public static final class Snapshot {
+
+    /**
+     * Snapshot of no class loaders, the identity for {@link #plus(Snapshot)}.
+     */
+    public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long classLoaders;
+
+    private final long classesDefined;
+
+    private final long bytesRead;
+
+    private final long ioNanos;
+
+    private final long scanNanos;
+
+    private final long defineNanos;
+
+    private final long evictions;
+
+    private final long cacheHits;
+
+    /**
+     * Counters, the names match the getters.
+     * @param classLoaders number of loaders whose counters are summed.
+     * @param classesDefined classes defined by the loaders.
+     * @param bytesRead class file bytes read.
+     * @param ioNanos time spent reading class files.
+     * @param scanNanos time spent scanning class files for static state.
+     * @param defineNanos time spent defining and resolving classes.
+     * @param evictions classes evicted, including those evicted from the verdict cache.
+     * @param cacheHits classes whose verdict was found in the verdict cache.
+     */
+    @ConstructorProperties({"classLoaders", "classesDefined", "bytesRead", "ioNanos", "scanNanos", "defineNanos",
+        "evictions", "cacheHits"})
+    public Snapshot(long classLoaders, long classesDefined, long bytesRead, long ioNanos, long scanNanos, long defineNanos,
+            long evictions, long cacheHits) {
+      this.classLoaders = classLoaders;
+      this.classesDefined = classesDefined;
+      this.bytesRead = bytesRead;
+      this.ioNanos = ioNanos;
+      this.scanNanos = scanNanos;
+      this.defineNanos = defineNanos;
+      this.evictions = evictions;
+      this.cacheHits = cacheHits;
+    }
+
+    /**
+     * Sum of two snapshots.
+     * @param other counters to add.
+     * @return a new snapshot.
+     */
+    public Snapshot plus(Snapshot other) {
+      return new Snapshot(classLoaders + other.classLoaders, classesDefined + other.classesDefined,
+          bytesRead + other.bytesRead, ioNanos + other.ioNanos, scanNanos + other.scanNanos,
+          defineNanos + other.defineNanos, evictions + other.evictions, cacheHits + other.cacheHits);
+    }
+
+    public long getClassLoaders() {
+      return classLoaders;
+    }
+
+    public long getClassesDefined() {
+      return classesDefined;
+    }
+
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public long getIoNanos() {
+      return ioNanos;
+    }
+
+    public long getScanNanos() {
+      return scanNanos;
+    }
+
+    public long getDefineNanos() {
+      return defineNanos;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public long getCacheHits() {
+      return cacheHits;
+    }
+
+    @Override
+    public String toString() {
+      return "classLoaders=" + classLoaders + ", classesDefined=" + classesDefined + ", bytesRead=" + bytesRead
+          + ", ioNanos=" + ioNanos + ", scanNanos=" + scanNanos + ", defineNanos=" + defineNanos
+          + ", evictions=" + evictions + ", cacheHits=" + cacheHits;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * Lists the classes a class file may cause its loader to load: the names of its class constants, and every object type
+ * in the descriptors and signatures in its constant pool.
+ * </p>
+ * <p>
+ * Any utf8 constant is searched for descriptors, so a string literal that happens to look like one adds a name that is
+ * probably not on the classpath.  Callers must treat the result as a superset.
+ * </p>
+ * @author rex
+ */
+final class ClassReferences {
+
+  private static final byte CLASS = 7;
+
+  private ClassReferences() {
+  }
+
+  /**
+   * Read the names referenced by a class file.
+   * @param bytes a class file.
+   * @return binary names, such as "java.lang.Object", or null if the bytes are not a class file this reader understands.
+   */
+  static Set<String> of(byte[] bytes) {
+    try {
+      return read(bytes);
+    } catch (IndexOutOfBoundsException malformed) {
+      return null;
+    }
+  }
+
+  private static Set<String> read(byte[] bytes) {
+    if (readInt(bytes, 0) != ClassFilePreFilter.MAGIC) {
+      return null;
+    }
+    int count = readUnsignedShort(bytes, 8);
+    int[] utf8Offsets = new int[count];
+    boolean[] classNames = new boolean[count];
+    int position = 10;
+    for (int index = 1; index < count; index++) {
+      if (bytes[position] == ClassFilePreFilter.UTF8) {
+        utf8Offsets[index] = position + 1;
+      } else if (bytes[position] == CLASS) {
+        classNames[readUnsignedShort(bytes, position + 1)] = true;
+      }
+      int length = ClassFilePreFilter.constantLength(bytes, position);
+      if (length < 0) {
+        return null;
+      }
+      if (ClassFilePreFilter.isTwoSlots(bytes[position])) {
+        index++;
+      }
+      position += length;
+    }
+    Set<String> names = new HashSet<>();
+    for (int index = 1; index < count; index++) {
+      int offset = utf8Offsets[index];
+      if (offset == 0) {
+        continue;
+      }
+      String value = new String(bytes, offset + 2, readUnsignedShort(bytes, offset), StandardCharsets.UTF_8);
+      if (classNames[index] && !value.startsWith("[")) {
+        names.add(value.replace('/', '.'));
+      } else {
+        addDescriptorTypes(value, names);
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Adds every L...; in a descriptor or signature, type arguments of a generic type are found as the search restarts
+   * after each L.
+   */
+  private static void addDescriptorTypes(String value, Set<String> names) {
+    int start = value.indexOf('L');
+    while (start >= 0) {
+      int end = start + 1;
+      while (end < value.length() && isNamePart(value.charAt(end))) {
+        end++;
+      }
+      if (end > start + 1 && end < value.length() && value.charAt(end) == ';') {
+        names.add(value.substring(start + 1, end).replace('/', '.'));
+      }
+      start = value.indexOf('L', start + 1);
+    }
+  }
+
+  private static boolean isNamePart(char character) {
+    return character == '/' || Character.isJavaIdentifierPart(character);
+  }
+
+  private static int readUnsignedShort(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    return (readUnsignedShort(bytes, offset) << 16) | readUnsignedShort(bytes, offset + 2);
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * Remembers which classes a transformer accepted, and which it evicted along with the reason, so that any number of
+ * {@link EvictingClassLoader}s sharing a parent and a transformer configuration scan each class at most once.
+ * </p>
+ * <p>
+ * Only share an instance between loaders whose transformers would reach the same verdict, a warn only transformer
+ * accepts everything.
+ * </p>
+ * @author rex
+ */
+public class ClassVerdictCache {
+
+  private final Set<String> verified = ConcurrentHashMap.newKeySet();
+
+  private final Map<String, String> evictions = new ConcurrentHashMap<>();
+
+  /**
+   * Whether a class has already been accepted by the transformer.
+   * @param className binary name of the class.
+   * @return true if the class was accepted.
+   */
+  public boolean isVerified(String className) {
+    return verified.contains(className);
+  }
+
+  /**
+   * Reason a class was evicted.
+   * @param className binary name of the class.
+   * @return the message of the {@link ClassFormatError} raised when the class was evicted, or null.
+   */
+  public String getEviction(String className) {
+    return evictions.get(className);
+  }
+
+  public void verified(String className) {
+    verified.add(className);
+  }
+
+  public void evicted(String className, String error) {
+    evictions.putIfAbsent(className, error);
+  }
+
+  /**
+   * Forget the verdicts of classes whose class files have changed, they will be scanned again.
+   * @param changed matches the binary names of changed classes.
+   */
+  public void invalidate(Predicate<String> changed) {
+    verified.removeIf(changed);
+    evictions.keySet().removeIf(changed);
+  }
+
+}
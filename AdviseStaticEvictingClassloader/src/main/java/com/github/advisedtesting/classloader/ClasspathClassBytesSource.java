@@ -0,0 +1,362 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>
+ * Reads class files straight from the classpath rather than through {@link ClassLoader#getResourceAsStream(String)},
+ * which opens a URL connection per resource and leaves callers guessing at its size.
+ * </p>
+ * <p>
+ * Each jar is opened once as a versioned {@link JarFile} and held open for the life of the source, entries are read into arrays
+ * sized from the central directory.  Exploded directories, such as target/classes, are read with a {@link FileChannel}
+ * into arrays sized from the file.  Class files are small, so mapping them would cost more than it saves.
+ * </p>
+ * <p>
+ * On the first read every root is indexed, class file name to the first root containing it, so a lookup is a single hash
+ * probe rather than a probe of each classpath entry in turn.  Jars do not change during a run, but classes may be
+ * compiled into directories after the index is built, so directories are still probed for classes the index misses, and
+ * {@link #invalidate(String)} brings the index up to date with a changed class file, see {@link ClassFileWatcher}.
+ * Resources in none of the roots are requested from the fallback loader.
+ * </p>
+ * @author rex
+ */
+public class ClasspathClassBytesSource implements ClassBytesSource {
+
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final List<Root> roots;
+
+  private final List<Root> directories;
+
+  private final ClassBytesSource fallback;
+
+  private volatile Map<String, Root> index;
+
+  /**
+   * Source over explicit classpath roots.
+   * @param classpath jars and directories, in search order.
+   * @param fallback consulted for resources not found in any root.
+   */
+  public ClasspathClassBytesSource(List<Path> classpath, ClassLoader fallback) {
+    List<Root> rootList = new ArrayList<>();
+    for (Path entry : classpath) {
+      if (Files.isDirectory(entry)) {
+        rootList.add(new DirectoryRoot(entry));
+      } else if (Files.isRegularFile(entry)) {
+        rootList.add(new JarRoot(entry));
+      }
+    }
+    this.roots = Collections.unmodifiableList(rootList);
+    this.directories = rootList.stream().filter(DirectoryRoot.class::isInstance).collect(Collectors.toList());
+    this.fallback = ClassBytesSource.resourcesOf(fallback);
+  }
+
+  /**
+   * The source for the jvm's classpath, built once.
+   * @return a source over java.class.path, including the Class-Path of manifest only jars.
+   */
+  public static ClasspathClassBytesSource systemClasspath() {
+    return SystemClasspath.INSTANCE;
+  }
+
+  @Override
+  public byte[] read(String resourceName) throws IOException {
+    Root indexed = index().get(resourceName);
+    if (indexed != null) {
+      byte[] bytes = indexed.read(resourceName);
+      if (bytes != null) {
+        return bytes;
+      }
+    }
+    for (Root root : directories) {
+      byte[] bytes = root.read(resourceName);
+      if (bytes != null) {
+        return bytes;
+      }
+    }
+    return fallback.read(resourceName);
+  }
+
+  /**
+   * Number of class files found in the classpath roots.
+   * @return the size of the index, building it if needed.
+   */
+  public int indexedClassCount() {
+    return index().size();
+  }
+
+  /**
+   * Names of the class files found in the classpath roots, each appears once however many roots contain it.
+   * @return slash separated class file names, such as "java/lang/Object.class".
+   */
+  public Set<String> indexedClassFileNames() {
+    return Collections.unmodifiableSet(index().keySet());
+  }
+
+  /**
+   * The exploded directories of the classpath, the only roots whose classes can change during a run.
+   * @return directories in search order.
+   */
+  public List<Path> getDirectories() {
+    return directories.stream().map(root -> ((DirectoryRoot) root).directory).collect(Collectors.toList());
+  }
+
+  /**
+   * Bring the index up to date with a class file that was created, changed or deleted in one of the directories.
+   * @param resourceName slash separated class file name.
+   */
+  public void invalidate(String resourceName) {
+    Map<String, Root> built = index;
+    if (built == null) {
+      return;
+    }
+    for (Root root : roots) {
+      if (root.contains(resourceName)) {
+        built.put(resourceName, root);
+        return;
+      }
+    }
+    built.remove(resourceName);
+  }
+
+  private Map<String, Root> index() {
+    Map<String, Root> built = index;
+    if (built == null) {
+      synchronized (this) {
+        built = index;
+        if (built == null) {
+          Map<String, Root> indexed = new HashMap<>();
+          for (Root root : roots) {
+            root.indexInto(indexed);
+          }
+          built = new ConcurrentHashMap<>(indexed);
+          index = built;
+        }
+      }
+    }
+    return built;
+  }
+
+  /**
+   * Expand the java.class.path property, following the Class-Path attribute of jar manifests as the system loader does
+   * (surefire, for one, launches forks with a single manifest only jar).
+   * @param classpath a path separated list of classpath entries.
+   * @return the entries in search order.
+   */
+  public static List<Path> expand(String classpath) {
+    Set<Path> entries = new LinkedHashSet<>();
+    for (String element : classpath.split(File.pathSeparator)) {
+      if (!element.isEmpty()) {
+        try {
+          addWithManifestClassPath(Paths.get(element).toAbsolutePath().normalize(), entries);
+        } catch (InvalidPathException ipe) {
+          //not a file system entry, left to the fallback loader.
+        }
+      }
+    }
+    return new ArrayList<>(entries);
+  }
+
+  private static void addWithManifestClassPath(Path entry, Set<Path> entries) {
+    if (!entries.add(entry) || !Files.isRegularFile(entry)) {
+      return;
+    }
+    try (JarFile jar = new JarFile(entry.toFile())) {
+      Manifest manifest = jar.getManifest();
+      String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+      if (classPath != null) {
+        for (String reference : classPath.trim().split("\\s+")) {
+          if (!reference.isEmpty()) {
+            addWithManifestClassPath(Paths.get(entry.toUri().resolve(reference)).normalize(), entries);
+          }
+        }
+      }
+    } catch (IOException | IllegalArgumentException ex) {
+      //unreadable jars and non file references are left to the fallback loader.
+    }
+  }
+
+  private static final class SystemClasspath {
+    private static final ClasspathClassBytesSource INSTANCE = new ClasspathClassBytesSource(
+            expand(System.getProperty("java.class.path", "")), ClassLoader.getSystemClassLoader());
+  }
+
+  private interface Root {
+
+    byte[] read(String resourceName) throws IOException;
+
+    boolean contains(String resourceName);
+
+    /**
+     * Add every class file in this root that is not already present in the index.
+     * @param index class file name to root.
+     */
+    void indexInto(Map<String, Root> index);
+  }
+
+  private static final class DirectoryRoot implements Root {
+
+    private final Path directory;
+
+    private DirectoryRoot(Path directory) {
+      this.directory = directory;
+    }
+
+    @Override
+    public byte[] read(String resourceName) throws IOException {
+      try (FileChannel channel = FileChannel.open(directory.resolve(resourceName), StandardOpenOption.READ)) {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("Class file too large " + resourceName);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) < 0) {
+            throw new IOException("Class file " + resourceName + " shrank while being read from " + directory);
+          }
+        }
+        return buffer.array();
+      } catch (NoSuchFileException | InvalidPathException ex) {
+        return null;
+      }
+    }
+
+    @Override
+    public boolean contains(String resourceName) {
+      try {
+        return Files.isRegularFile(directory.resolve(resourceName));
+      } catch (InvalidPathException ex) {
+        return false;
+      }
+    }
+
+    @Override
+    public void indexInto(Map<String, Root> index) {
+      try (Stream<Path> files = Files.walk(directory)) {
+        files.filter(file -> file.getFileName().toString().endsWith(CLASS_SUFFIX))
+             .forEach(file -> index.putIfAbsent(directory.relativize(file).toString().replace(File.separatorChar, '/'), this));
+      } catch (IOException | UncheckedIOException ex) {
+        //unindexed classes are still found by probing the directory.
+      }
+    }
+  }
+
+  private static final class JarRoot implements Root {
+
+    private final Path jar;
+
+    private volatile JarFile zip;
+
+    private JarRoot(Path jar) {
+      this.jar = jar;
+    }
+
+    /**
+     * Opened as the system loader opens it, so multi release jars supply the entries for the running jvm's version.
+     */
+    private JarFile zip() throws IOException {
+      JarFile opened = zip;
+      if (opened == null) {
+        synchronized (this) {
+          opened = zip;
+          if (opened == null) {
+            opened = new JarFile(jar.toFile(), true, ZipFile.OPEN_READ, Runtime.version());
+            zip = opened;
+          }
+        }
+      }
+      return opened;
+    }
+
+    @Override
+    public byte[] read(String resourceName) throws IOException {
+      JarFile file = zip();
+      ZipEntry entry = file.getJarEntry(resourceName);
+      if (entry == null || entry.isDirectory()) {
+        return null;
+      }
+      try (InputStream in = file.getInputStream(entry)) {
+        long size = entry.getSize();
+        if (size < 0 || size > Integer.MAX_VALUE) {
+          return in.readAllBytes();
+        }
+        byte[] bytes = new byte[(int) size];
+        int read = in.readNBytes(bytes, 0, bytes.length);
+        if (read != bytes.length) {
+          throw new IOException("Truncated entry " + resourceName + " in " + jar);
+        }
+        return bytes;
+      }
+    }
+
+    @Override
+    public boolean contains(String resourceName) {
+      try {
+        ZipEntry entry = zip().getJarEntry(resourceName);
+        return entry != null && !entry.isDirectory();
+      } catch (IOException ioe) {
+        return false;
+      }
+    }
+
+    @Override
+    public void indexInto(Map<String, Root> index) {
+      try (Stream<JarEntry> entries = zip().versionedStream()) {
+        entries.map(JarEntry::getName).filter(name -> name.endsWith(CLASS_SUFFIX))
+               .forEach(name -> index.putIfAbsent(name, this));
+      } catch (IOException ioe) {
+        //an unreadable jar can not supply classes, the fallback loader will report on them.
+      }
+    }
+  }
+}
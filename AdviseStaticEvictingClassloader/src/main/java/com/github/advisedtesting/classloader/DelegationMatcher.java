@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Decides whether a class name belongs to a package that an {@link EvictingClassLoader} delegates to its parent.
+ * </p>
+ * <p>
+ * The prefixes (always including {@link EvictingClassLoader#DEFAULT_EXCLUDED_PACKAGES}) are compiled into an immutable
+ * prefix trie, so a decision costs at most one binary search per character of the class name and allocates nothing.
+ * Matchers are interned by their prefixes, loaders with the same configuration share a single instance.
+ * </p>
+ * @author rex
+ */
+public final class DelegationMatcher {
+
+  private static final Map<Set<String>, DelegationMatcher> MATCHERS_BY_PREFIXES = new ConcurrentHashMap<>();
+
+  private final Set<String> prefixes;
+
+  private final Node root;
+
+  private DelegationMatcher(Set<String> prefixes) {
+    this.prefixes = prefixes;
+    Builder builder = new Builder();
+    for (String prefix : prefixes) {
+      builder.add(prefix, 0);
+    }
+    this.root = builder.build();
+  }
+
+  /**
+   * Compiled matcher for the prefixes plus {@link EvictingClassLoader#DEFAULT_EXCLUDED_PACKAGES}.
+   * @param prefixes packages (or any class name prefix) to delegate to the parent.
+   * @return a shared matcher.
+   */
+  public static DelegationMatcher of(Collection<String> prefixes) {
+    Set<String> all = new TreeSet<>(prefixes);
+    all.addAll(Arrays.asList(EvictingClassLoader.DEFAULT_EXCLUDED_PACKAGES));
+    Set<String> key = Collections.unmodifiableSet(all);
+    return MATCHERS_BY_PREFIXES.computeIfAbsent(key, DelegationMatcher::new);
+  }
+
+  /**
+   * Whether a class should be loaded by the parent.
+   * @param className binary name of a class.
+   * @return true if the class name starts with any of the prefixes.
+   */
+  public boolean delegates(String className) {
+    Node node = root;
+    for (int i = 0; i < className.length(); i++) {
+      if (node.terminal) {
+        return true;
+      }
+      int index = Arrays.binarySearch(node.keys, className.charAt(i));
+      if (index < 0) {
+        return false;
+      }
+      node = node.children[index];
+    }
+    return node.terminal;
+  }
+
+  public Set<String> getPrefixes() {
+    return prefixes;
+  }
+
+  private static final class Node {
+
+    private final boolean terminal;
+
+    private final char[] keys;
+
+    private final Node[] children;
+
+    private Node(boolean terminal, char[] keys, Node[] children) {
+      this.terminal = terminal;
+      this.keys = keys;
+      this.children = children;
+    }
+  }
+
+  /**
+   * Mutable trie, only used while compiling.
+   */
+  private static final class Builder {
+
+    private boolean terminal = false;
+
+    private final SortedMap<Character, Builder> children = new TreeMap<>();
+
+    private void add(String prefix, int offset) {
+      if (offset == prefix.length()) {
+        terminal = true;
+      } else {
+        children.computeIfAbsent(prefix.charAt(offset), c -> new Builder()).add(prefix, offset + 1);
+      }
+    }
+
+    private Node build() {
+      if (terminal) {
+        return new Node(true, new char[0], new Node[0]);
+      }
+      char[] keys = new char[children.size()];
+      Node[] nodes = new Node[children.size()];
+      int index = 0;
+      for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+        keys[index] = entry.getKey();
+        nodes[index++] = entry.getValue().build();
+      }
+      return new Node(false, keys, nodes);
+    }
+  }
+}
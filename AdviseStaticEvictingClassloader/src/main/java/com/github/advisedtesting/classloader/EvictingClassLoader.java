@@ -22,18 +22,45 @@
  */
 package com.github.advisedtesting.classloader;
 
-import java.io.DataInputStream;
-import java.io.File;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
-public class EvictingClassLoader extends ClassLoader {
+/**
+ * <p>
+ * Child first class loader that defines every class outside its {@link DelegationMatcher} itself, after the transformer
+ * has had a chance to evict it.
+ * </p>
+ * <p>
+ * Registered as parallel capable, concurrent loads of different classes proceed in parallel, and concurrent loads of the
+ * same class are serialized on a per class name lock so a class is only ever defined once.
+ * </p>
+ * <p>
+ * Once closed the loader defines no more classes and forgets its evictions, so that nothing but its already defined
+ * classes and their instances keep it reachable, and they can all be unloaded together.
+ * </p>
+ */
+public class EvictingClassLoader extends ClassLoader implements Closeable {
+
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
 
   //Spring's shadowing classloader had this info...
   public static final String[] DEFAULT_EXCLUDED_PACKAGES =
@@ -41,91 +68,219 @@ public class EvictingClassLoader extends ClassLoader {
               "org.w3c.", "org.xml.", "org.dom4j.", "org.eclipse", "org.aspectj.", "net.sf.cglib",
               "org.springframework.cglib", "org.apache.xerces.", "org.apache.commons.logging."};
   
-  private final List<String> whiteList;
+  private final DelegationMatcher delegation;
 
   private final ClassFileTransformer transformer;
 
-  private final Map<String, String> classNameToError = new HashMap<>();
+  private final Map<String, String> classNameToError = new ConcurrentHashMap<>();
+
+  private final ClassVerdictCache verdicts;
+
+  private final ClassBytesSource classBytes;
+
+  private final SharedVerifiedClassLoader sharedTier;
+
+  private final ResourceLookupCache resourceLookups;
+
+  private final ClassLoadingMetrics metrics = new ClassLoadingMetrics();
+
+  private final LongAdder definedBytes = new LongAdder();
+
+  private final Queue<Method> resets = new ConcurrentLinkedQueue<>();
+
+  private final List<String> loadedNames = new ArrayList<>();
+
+  private final Set<String> resourceNames = ConcurrentHashMap.newKeySet();
+
+  private final AtomicReference<Runnable> closeListener = new AtomicReference<>();
+
+  private volatile boolean closed = false;
   
   public EvictingClassLoader(List<String> whiteList, ClassFileTransformer transformer, ClassLoader parent) {
-    super(parent);
-    this.whiteList = whiteList;
-    whiteList.addAll(Arrays.asList(DEFAULT_EXCLUDED_PACKAGES));
-    this.transformer = transformer;
+    this(whiteList, transformer, parent, new ClassVerdictCache());
   }
 
-  
+  /**
+   * Build a loader that shares the transformer's verdicts with other loaders.
+   * @param whiteList packages to delegate to the parent.
+   * @param transformer throws {@link ClassFormatError} for classes that should be evicted.
+   * @param parent the class loader delegated to for white listed packages.
+   * @param verdicts verdicts shared by loaders with the same parent and an equivalent transformer.
+   */
+  public EvictingClassLoader(List<String> whiteList, ClassFileTransformer transformer, ClassLoader parent,
+          ClassVerdictCache verdicts) {
+    this(DelegationMatcher.of(whiteList), transformer, parent, verdicts);
+  }
+
+  /**
+   * Build a loader from an already compiled delegation policy.
+   * @param delegation decides which classes are delegated to the parent.
+   * @param transformer throws {@link ClassFormatError} for classes that should be evicted.
+   * @param parent the class loader delegated to for white listed packages.
+   * @param verdicts verdicts shared by loaders with the same parent and an equivalent transformer.
+   */
+  public EvictingClassLoader(DelegationMatcher delegation, ClassFileTransformer transformer, ClassLoader parent,
+          ClassVerdictCache verdicts) {
+    this(delegation, transformer, parent, verdicts, null);
+  }
+
+  /**
+   * Build a loader that takes classes with no static state from a tier shared with other loaders, defining only the
+   * rest itself.
+   * @param delegation decides which classes are delegated to the parent, must be the tier's policy.
+   * @param transformer throws {@link ClassFormatError} for classes that should be evicted.
+   * @param parent the class loader delegated to for white listed packages, must be the tier's parent.
+   * @param verdicts verdicts shared by loaders with the same parent and an equivalent transformer.
+   * @param sharedTier defines the classes it can share, or null to define every class in this loader.
+   */
+  public EvictingClassLoader(DelegationMatcher delegation, ClassFileTransformer transformer, ClassLoader parent,
+          ClassVerdictCache verdicts, SharedVerifiedClassLoader sharedTier) {
+    this(delegation, transformer, parent, verdicts, sharedTier, null);
+  }
 
+  /**
+   * Build a loader whose resource lookups are answered by a cache shared with other loaders.
+   * @param delegation decides which classes are delegated to the parent, must be the tier's policy.
+   * @param transformer throws {@link ClassFormatError} for classes that should be evicted.
+   * @param parent the class loader delegated to for white listed packages and resources.
+   * @param verdicts verdicts shared by loaders with the same parent and an equivalent transformer.
+   * @param sharedTier defines the classes it can share, or null to define every class in this loader.
+   * @param resourceLookups caches the parent's resource lookups, or null to ask the parent every time.
+   * @throws IllegalArgumentException if the cache is not of the parent's lookups.
+   */
+  public EvictingClassLoader(DelegationMatcher delegation, ClassFileTransformer transformer, ClassLoader parent,
+          ClassVerdictCache verdicts, SharedVerifiedClassLoader sharedTier, ResourceLookupCache resourceLookups) {
+    super(parent);
+    if (resourceLookups != null && resourceLookups.getParent() != parent) {
+      throw new IllegalArgumentException("Resource lookups are cached for another parent " + resourceLookups.getParent());
+    }
+    this.delegation = delegation;
+    this.transformer = transformer;
+    this.verdicts = verdicts;
+    this.classBytes = ClassBytesSource.forLoader(EvictingClassLoader.class.getClassLoader());
+    this.sharedTier = sharedTier;
+    this.resourceLookups = resourceLookups;
+  }
   
   private Class<?> getClass(String name) throws ClassNotFoundException {
-    String file = name.replace('.', File.separatorChar) + ".class";
-    byte[] bytes = null;
+    synchronized (getClassLoadingLock(name)) {
+      Class<?> loaded = super.findLoadedClass(name);
+      if (loaded != null) {
+        return loaded;
+      }
+      if (closed) {
+        throw new ClassNotFoundException(name + " requested from a closed " + EvictingClassLoader.class.getSimpleName());
+      }
+      String eviction = verdicts.getEviction(name);
+      if (eviction != null) {
+        metrics.cacheHit();
+        metrics.evicted();
+        classNameToError.put(name, eviction);
+        throw new ClassFormatError(eviction);
+      }
+      if (sharedTier != null) {
+        Class<?> shared = sharedTier.findShared(name);
+        if (shared != null) {
+          metrics.cacheHit();
+          loaded(name);
+          return shared;
+        }
+      }
+      return defineFromBytes(name);
+    }
+  }
+
+  private Class<?> defineFromBytes(String name) throws ClassNotFoundException {
+    long start = System.nanoTime();
+    byte[] bytes;
     try {
-      bytes = loadClassData(file);
+      bytes = classBytes.read(name.replace('.', '/') + ".class");
+    } catch (IOException ioe) {
+      throw new ClassNotFoundException(name, ioe);
+    }
+    if (bytes == null) {
+      throw new ClassNotFoundException(name);
+    }
+    long read = System.nanoTime();
+    metrics.read(bytes.length, read - start);
+    if (verdicts.isVerified(name)) {
+      metrics.cacheHit();
+      if (transformer instanceof EvictingStaticTransformer) {
+        //warn only violations are verified too, and their reporter counts every load.
+        ((EvictingStaticTransformer) transformer).verdictReused(name);
+      }
+    } else {
+      byte[] transformed;
       try {
-        transformer.transform(null, name, null, null, bytes);
+        transformed = transformer.transform(null, name, null, null, bytes);
       } catch (ClassFormatError error) {
+        metrics.evicted();
         classNameToError.put(name, error.getMessage());
+        verdicts.evicted(name, error.getMessage());
         throw error;
       } catch (IllegalClassFormatException icfe) {
         throw new ClassNotFoundException(name, icfe);
+      } finally {
+        metrics.scanned(System.nanoTime() - read);
       }
-      Class<?> loaded = super.findLoadedClass(name);
-      if (loaded != null) {
-        return loaded;
-      } else {   
-        Class<?> cl = defineClass(name, bytes, 0, bytes.length);
-        resolveClass(cl);
-        return cl;
+      if (transformed == null) {
+        verdicts.verified(name);
+      } else {
+        bytes = transformed;
       }
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
-      return null;
     }
+    long scanned = System.nanoTime();
+    Class<?> cl = defineClass(name, bytes, 0, bytes.length);
+    resolveClass(cl);
+    metrics.defined(System.nanoTime() - scanned);
+    definedBytes.add(bytes.length);
+    loaded(name);
+    return cl;
   }
 
   @Override
   public Class<?> loadClass(String name) throws ClassNotFoundException {
-    boolean shouldLoad = true;
-    for (String prefix : whiteList) {
-      shouldLoad = shouldLoad && !name.startsWith(prefix);
-    }
-    if (shouldLoad) {
-      return getClass(name);
+    if (delegation.delegates(name)) {
+      return super.loadClass(name);
     }
-    return super.loadClass(name);
+    return getClass(name);
   }
 
   @Override
   public Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-    boolean shouldLoad = true;
-    for (String prefix : whiteList) {
-      shouldLoad = shouldLoad && !name.startsWith(prefix);
+    if (delegation.delegates(name)) {
+      return super.loadClass(name, resolve);
     }
-    if (shouldLoad) {
-      return getClass(name);
+    return getClass(name);
+  }
+
+  /**
+   * Resources are the parent's, this loader defines none of its own, so lookups may be answered by a shared cache.
+   * @param name slash separated resource name.
+   * @return the resource's url, or null if not found.
+   */
+  @Override
+  public URL getResource(String name) {
+    resourceNames.add(name);
+    if (resourceLookups == null) {
+      return super.getResource(name);
     }
-    return super.loadClass(name, resolve);
+    return resourceLookups.getResource(name);
   }
-  
+
   /**
-   * Loads a given file (presumably .class) into a byte array. The file should be accessible as a resource, for example it could be
-   * located on the classpath.
-   *
-   * @param name
-   *          File name to load
-   * @return Byte array read from the file
-   * @throws IOException
-   *           Is thrown when there was some problem reading the file
-   */
-  private byte[] loadClassData(String name) throws IOException {
-    InputStream stream = getClass().getClassLoader().getResourceAsStream(name);
-    int size = stream.available();
-    byte[] buff = new byte[size];
-    DataInputStream in = new DataInputStream(stream);
-    in.readFully(buff);
-    in.close();
-    return buff;
+   * Resources are the parent's, this loader defines none of its own, so lookups may be answered by a shared cache.
+   * @param name slash separated resource name.
+   * @return the urls of every resource with the name.
+   * @throws IOException if the classpath can not be searched.
+   */
+  @Override
+  public Enumeration<URL> getResources(String name) throws IOException {
+    resourceNames.add(name);
+    if (resourceLookups == null) {
+      return super.getResources(name);
+    }
+    return resourceLookups.getResources(name);
   }
   
   /**
@@ -142,4 +297,146 @@ public class EvictingClassLoader extends ClassLoader {
   public String getError(String className) {
     return classNameToError.get(className);
   }
+
+  private void loaded(String name) {
+    synchronized (loadedNames) {
+      loadedNames.add(name);
+    }
+  }
+
+  /**
+   * Define classes ahead of their use, without initializing them.  Classes that can not be loaded are skipped, the code
+   * that needs them will report the failure.
+   * @param classNames binary names of classes to define, stops early once this loader is closed.
+   */
+  public void preload(Iterable<String> classNames) {
+    for (String className : classNames) {
+      if (closed) {
+        return;
+      }
+      try {
+        Class.forName(className, false, this);
+      } catch (ClassNotFoundException | LinkageError ex) {
+        //the code that needs the class will report the failure.
+      }
+    }
+  }
+
+  /**
+   * Mark the classes loaded so far, see {@link #getLoadedClassNames(int)}.
+   * @return the number of classes this loader has defined or taken from its shared tier.
+   */
+  public int getLoadedClassCount() {
+    synchronized (loadedNames) {
+      return loadedNames.size();
+    }
+  }
+
+  /**
+   * Classes loaded since a mark, on any thread.
+   * @param from a value of {@link #getLoadedClassCount()}.
+   * @return binary names of the classes loaded since, in the order they were loaded.
+   */
+  public List<String> getLoadedClassNames(int from) {
+    synchronized (loadedNames) {
+      return new ArrayList<>(loadedNames.subList(Math.min(from, loadedNames.size()), loadedNames.size()));
+    }
+  }
+
+  /**
+   * Every class code running in this loader could have used, short of delegated classes.
+   * @return binary names of the classes loaded by this loader, and of those defined by its shared tier.
+   */
+  public Set<String> getFootprint() {
+    Set<String> footprint = new LinkedHashSet<>(getLoadedClassNames(0));
+    if (sharedTier != null) {
+      footprint.addAll(sharedTier.getDefinedClassNames());
+    }
+    return footprint;
+  }
+
+  /**
+   * Every resource code running in this loader has looked up, the resource counterpart of {@link #getFootprint()}.
+   * @return slash separated names of the resources requested from this loader, whether or not they were found.
+   */
+  public Set<String> getResourceNames() {
+    return new TreeSet<>(resourceNames);
+  }
+
+  /**
+   * Called as a class rewritten by {@link ResettingStaticTransformer} completes its static initializer.
+   * @param clazz a class defined by this loader.
+   */
+  void initialized(Class<?> clazz) {
+    try {
+      Method reset = clazz.getDeclaredMethod(ResettingStaticTransformer.RESET);
+      reset.setAccessible(true);
+      resets.add(reset);
+    } catch (NoSuchMethodException ex) {
+      throw new IllegalStateException(clazz.getName() + " was not rewritten by " + ResettingStaticTransformer.class.getName(),
+          ex);
+    }
+  }
+
+  /**
+   * <p>
+   * Return the static state of classes rewritten by {@link ResettingStaticTransformer} to what it was just after they
+   * were initialized, by clearing their static fields and running their static initializers again, in the order they
+   * were first initialized.  Does nothing for loaders built with other transformers.
+   * </p>
+   * <p>
+   * Must not be called while code is running in this loader.
+   * </p>
+   * @throws IllegalStateException if a static initializer fails, the state of the loader is then undefined.
+   */
+  public void resetStaticState() {
+    for (Method reset : new ArrayList<>(resets)) {
+      try {
+        reset.invoke(null);
+      } catch (IllegalAccessException | InvocationTargetException ex) {
+        throw new IllegalStateException("Could not reset the static state of " + reset.getDeclaringClass().getName(), ex);
+      }
+    }
+  }
+
+  /**
+   * Live counters of this loader's work, see {@link ClassLoadingMetrics#snapshot()}.
+   * @return the counters of this loader.
+   */
+  public ClassLoadingMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Rough measure of the metaspace held by this loader.
+   * @return total size of the class files this loader has defined.
+   */
+  public long getDefinedBytes() {
+    return definedBytes.sum();
+  }
+
+  /**
+   * Called once, on the first call to {@link #close()}, so an owner can stop referencing the loader when it closes.
+   * @param listener replaces any listener already set.
+   */
+  void whenClosed(Runnable listener) {
+    closeListener.set(listener);
+  }
+
+  /**
+   * Stop defining classes and drop the eviction messages, classes already defined remain usable.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    classNameToError.clear();
+    Runnable listener = closeListener.getAndSet(null);
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
 }
@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * Least recently used cache of shared {@link EvictingClassLoader}s, bounded by the number of loaders and by the total
+ * size of the classes they have defined, see {@link #MAX_LOADERS_PROPERTY} and {@link #MAX_DEFINED_BYTES_PROPERTY}.
+ * </p>
+ * <p>
+ * A loader is used through a {@link Lease}.  Evicted loaders are closed, once their last lease is released if they are
+ * still in use by a running test, and then only referenced by the classes they defined so their metaspace can be
+ * reclaimed.  Limits are checked whenever a loader is acquired, as loaders grow while tests run.
+ * </p>
+ * <p>
+ * When the last lease of a loader is released its static state is reset, see {@link EvictingClassLoader#resetStaticState()}.
+ * A loader that fails to reset is evicted.
+ * </p>
+ * @param <K> key identifying a loader's configuration.
+ * @author rex
+ */
+public class EvictingClassLoaderCache<K> implements Closeable {
+
+  /**
+   * System property, maximum number of cached loaders, default {@value #DEFAULT_MAX_LOADERS}.
+   */
+  public static final String MAX_LOADERS_PROPERTY = "advisedtesting.classloader.maxCachedLoaders";
+
+  /**
+   * System property, maximum total bytes of class files defined by the cached loaders, default
+   * {@value #DEFAULT_MAX_DEFINED_BYTES}.  The most recently used loader is kept regardless.
+   */
+  public static final String MAX_DEFINED_BYTES_PROPERTY = "advisedtesting.classloader.maxCachedDefinedBytes";
+
+  public static final int DEFAULT_MAX_LOADERS = 16;
+
+  public static final long DEFAULT_MAX_DEFINED_BYTES = 256L * 1024 * 1024;
+
+  private final int maxLoaders;
+
+  private final long maxDefinedBytes;
+
+  private final Map<K, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private boolean closed = false;
+
+  public EvictingClassLoaderCache(int maxLoaders, long maxDefinedBytes) {
+    this.maxLoaders = Math.max(1, maxLoaders);
+    this.maxDefinedBytes = maxDefinedBytes;
+  }
+
+  /**
+   * A cache sized by system properties.
+   * @param <K> key identifying a loader's configuration.
+   * @return a new cache.
+   */
+  public static <K> EvictingClassLoaderCache<K> fromSystemProperties() {
+    return new EvictingClassLoaderCache<>(Integer.getInteger(MAX_LOADERS_PROPERTY, DEFAULT_MAX_LOADERS),
+        Long.getLong(MAX_DEFINED_BYTES_PROPERTY, DEFAULT_MAX_DEFINED_BYTES));
+  }
+
+  /**
+   * Lease the loader for a key, building it if it is not cached, then evict least recently used loaders over the limits.
+   * @param key configuration of the loader.
+   * @param factory builds the loader for a key that is not cached.
+   * @return a lease that must be closed once the loader is no longer in use.
+   * @throws IllegalStateException if the cache is closed.
+   */
+  public synchronized Lease acquire(K key, Function<K, EvictingClassLoader> factory) {
+    if (closed) {
+      throw new IllegalStateException("Class loader cache is closed");
+    }
+    Entry entry = entries.computeIfAbsent(key, k -> new Entry(factory.apply(k)));
+    entry.leases++;
+    evictOverLimits();
+    return new Lease(entry);
+  }
+
+  /**
+   * Evict loaders that should no longer be used, such as those that defined classes which have since been recompiled.
+   * Loaders are closed once their last lease is released.
+   * @param stale matches the loaders to evict.
+   */
+  public synchronized void evictIf(Predicate<EvictingClassLoader> stale) {
+    Iterator<Entry> all = entries.values().iterator();
+    while (all.hasNext()) {
+      Entry entry = all.next();
+      if (stale.test(entry.loader)) {
+        all.remove();
+        entry.evicted = true;
+        if (entry.leases == 0) {
+          entry.loader.close();
+        }
+      }
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Close every cached loader, whether or not it is leased.
+   */
+  @Override
+  public void close() {
+    List<Entry> all;
+    synchronized (this) {
+      closed = true;
+      all = new ArrayList<>(entries.values());
+      entries.clear();
+    }
+    all.forEach(entry -> entry.loader.close());
+  }
+
+  private void evictOverLimits() {
+    long definedBytes = 0;
+    for (Entry entry : entries.values()) {
+      definedBytes += entry.loader.getDefinedBytes();
+    }
+    Iterator<Entry> eldestFirst = entries.values().iterator();
+    while (entries.size() > 1 && (entries.size() > maxLoaders || definedBytes > maxDefinedBytes)) {
+      Entry eldest = eldestFirst.next();
+      eldestFirst.remove();
+      definedBytes -= eldest.loader.getDefinedBytes();
+      eldest.evicted = true;
+      if (eldest.leases == 0) {
+        eldest.loader.close();
+      }
+    }
+  }
+
+  private synchronized void release(Entry entry) {
+    entry.leases--;
+    if (entry.evicted && entry.leases == 0) {
+      entry.loader.close();
+    } else if (entry.leases == 0) {
+      try {
+        entry.loader.resetStaticState();
+      } catch (IllegalStateException ex) {
+        entries.values().remove(entry);
+        entry.evicted = true;
+        entry.loader.close();
+        throw ex;
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final EvictingClassLoader loader;
+
+    private int leases;
+
+    private boolean evicted;
+
+    private Entry(EvictingClassLoader loader) {
+      this.loader = loader;
+    }
+  }
+
+  /**
+   * Use of a cached loader, keeps the loader open while held even if it is evicted.
+   */
+  public final class Lease implements Closeable {
+
+    private final Entry entry;
+
+    private boolean released;
+
+    private Lease(Entry entry) {
+      this.entry = entry;
+    }
+
+    public EvictingClassLoader getLoader() {
+      return entry.loader;
+    }
+
+    @Override
+    public void close() {
+      if (!released) {
+        released = true;
+        release(entry);
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Hands out a fresh {@link EvictingClassLoader} per test, so no test can observe a class initialized by another test.
+ * </p>
+ * <p>
+ * Loaders are built, and the warm classes defined in them, on a background thread while earlier tests run.  A loader is
+ * never returned to the pool once handed out, its classes may hold state from the test that used it.  If the pool is
+ * empty when a loader is needed one is built on the calling thread rather than waiting on the background thread.
+ * </p>
+ * @author rex
+ */
+public class EvictingClassLoaderPool implements Closeable {
+
+  private final Supplier<EvictingClassLoader> factory;
+
+  private final List<String> warmClasses;
+
+  private final BlockingQueue<EvictingClassLoader> ready;
+
+  private final ExecutorService warmer;
+
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  /**
+   * Build a pool, and start preparing its loaders.
+   * @param factory builds an unused loader.
+   * @param size number of prepared loaders to keep ready, at least one.
+   * @param warmClasses binary names of classes to define in each loader before it is handed out.
+   */
+  public EvictingClassLoaderPool(Supplier<EvictingClassLoader> factory, int size, List<String> warmClasses) {
+    this.factory = factory;
+    this.warmClasses = new ArrayList<>(warmClasses);
+    this.ready = new ArrayBlockingQueue<>(Math.max(1, size));
+    this.warmer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "advisedtesting-classloader-warmer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (int i = 0; i < ready.remainingCapacity(); i++) {
+      prepareInBackground();
+    }
+  }
+
+  /**
+   * Take a loader that no test has used, and start preparing its replacement.
+   * @return an unused, warmed, loader.
+   */
+  public EvictingClassLoader take() {
+    EvictingClassLoader loader = ready.poll();
+    if (loader == null) {
+      loader = warm(factory.get());
+    }
+    prepareInBackground();
+    return loader;
+  }
+
+  /**
+   * Stops preparing loaders and closes any that are ready, loaders already handed out are left to their users.
+   */
+  @Override
+  public void close() {
+    if (!closed.getAndSet(true)) {
+      warmer.shutdownNow();
+      List<EvictingClassLoader> unused = new ArrayList<>();
+      ready.drainTo(unused);
+      unused.forEach(EvictingClassLoader::close);
+    }
+  }
+
+  private void prepareInBackground() {
+    if (closed.get()) {
+      return;
+    }
+    try {
+      warmer.execute(() -> {
+        if (!closed.get()) {
+          EvictingClassLoader loader = warm(factory.get());
+          if (!ready.offer(loader) || closed.get() && ready.remove(loader)) {
+            loader.close();
+          }
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      //closed concurrently.
+    }
+  }
+
+  private EvictingClassLoader warm(EvictingClassLoader loader) {
+    loader.preload(warmClasses);
+    return loader;
+  }
+}
@@ -31,19 +31,45 @@ public class EvictingStaticTransformer implements ClassFileTransformer {
   private final boolean warnOnly;
 
   private final ClassContainsStaticInitialization asmScanner;
+
+  private final VerdictStore verdictStore;
+
+  private final ViolationReporter reporter;
   
   public EvictingStaticTransformer() {
     this(false);
   }
 
   public EvictingStaticTransformer(boolean warnOnly) {
+    this(warnOnly, VerdictStore.fromSystemProperties());
+  }
+
+  /**
+   * Transformer backed by a persistent verdict store.
+   * @param warnOnly if true violations are printed rather than thrown.
+   * @param verdictStore consulted before scanning a class, may be null.
+   */
+  public EvictingStaticTransformer(boolean warnOnly, VerdictStore verdictStore) {
+    this(warnOnly, verdictStore, null);
+  }
+
+  /**
+   * Transformer backed by a persistent verdict store, whose warnings are collected rather than printed.
+   * @param warnOnly if true violations are reported rather than thrown.
+   * @param verdictStore consulted before scanning a class, may be null.
+   * @param reporter receives the violations of warn only transformers, if null they are printed as classes load.
+   */
+  public EvictingStaticTransformer(boolean warnOnly, VerdictStore verdictStore, ViolationReporter reporter) {
     this.warnOnly = warnOnly;
-    this.asmScanner = new ClassContainsStaticInitialization();
+    this.reporter = reporter;
+    //warnings list every violation, and persisted verdicts must serve both modes, otherwise the first violation is enough.
+    this.asmScanner = new ClassContainsStaticInitialization(!warnOnly && verdictStore == null);
+    this.verdictStore = verdictStore;
   }
 
 
   /**
-   * Potentially print warnings about static state, and potentially throw ClassFormatErrors when static state is found.
+   * Potentially report warnings about static state, and potentially throw ClassFormatErrors when static state is found.
    * 
    * @param loader the parent class loader, ignored.
    * @param className the name of the class to verify.
@@ -54,9 +80,11 @@ public class EvictingStaticTransformer implements ClassFileTransformer {
    */
   public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
           ProtectionDomain protectionDomain, byte[] classfileBuffer) {
-    List<String> errors = asmScanner.apply(classfileBuffer);
-    if (errors.size() > 0) {
-      StringBuffer buffer = new StringBuffer();
+    List<String> errors = scan(classfileBuffer);
+    if (errors.size() > 0 && warnOnly && reporter != null) {
+      reporter.report(className.replace('/', '.'), errors);
+    } else if (errors.size() > 0) {
+      StringBuilder buffer = new StringBuilder();
       buffer.append("Static state found in class ")
             .append(className.replace('/', '.'));
       if (warnOnly) {   
@@ -75,4 +103,21 @@ public class EvictingStaticTransformer implements ClassFileTransformer {
     return null;
   }
 
+  /**
+   * A loader defined a class without transforming it again, as an earlier transform found nothing to throw.
+   * @param className binary name of the class.
+   */
+  public void verdictReused(String className) {
+    if (reporter != null) {
+      reporter.reloaded(className);
+    }
+  }
+
+  private List<String> scan(byte[] classfileBuffer) {
+    if (verdictStore == null) {
+      return asmScanner.apply(classfileBuffer);
+    }
+    return verdictStore.scan(classfileBuffer, asmScanner);
+  }
+
 }
@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Hashes of the class files each test could have used when it last passed, so that a test none of whose classes have
+ * changed since can be skipped.
+ * </p>
+ * <p>
+ * A test's footprint is every class its {@link EvictingClassLoader} had loaded by the end of the test, and every resource
+ * looked up through it, including those of earlier tests sharing the loader, so it errs on the side of running tests.
+ * Classes in delegated packages are not loaded by an evicting loader, they are only covered by the classpath: a change
+ * to the classpath itself makes every test run, as does a change to the size or modification time of one of its jars,
+ * a change to a delegated class file in an unchanged directory does not.
+ * </p>
+ * <p>
+ * The classpath is compared entry by entry after following manifest Class-Path attributes, manifest only jars are left
+ * out, so the launcher jar surefire writes to a new temporary file for every fork does not change it.
+ * </p>
+ * <p>
+ * Kept in {@value #FILE} in the directory named by {@value VerdictStore#CACHE_DIR_PROPERTY}, tests are only skipped if
+ * {@value #SKIP_UNCHANGED_PROPERTY} is also true.  The file is replaced when the footprints are closed.
+ * </p>
+ * @author rex
+ */
+public class GreenFootprints implements Closeable {
+
+  /**
+   * System property, if true tests whose footprint is unchanged since they last passed are skipped.
+   */
+  public static final String SKIP_UNCHANGED_PROPERTY = "advisedtesting.classloader.skipUnchangedTests";
+
+  public static final String FILE = "green-footprints.txt";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GreenFootprints.class);
+
+  private static final String CLASSPATH_PREFIX = "classpath ";
+
+  private static final String TEST_PREFIX = "test ";
+
+  private static final String RESOURCE_PREFIX = "resource ";
+
+  private static final String MISSING = "-";
+
+  private final Path file;
+
+  private final ClassBytesSource classBytes;
+
+  private final String classpathKey;
+
+  private final Map<String, Map<String, String>> hashesByTest = new ConcurrentHashMap<>();
+
+  private final Map<String, String> currentHashes = new ConcurrentHashMap<>();
+
+  private volatile boolean changed = false;
+
+  /**
+   * Read the footprints recorded with the same classpath.
+   * @param file holds the footprints, created when they are first written.
+   * @param classBytes reads the current version of the class files and resources.
+   * @param classpath expanded classpath entries, footprints recorded with a different classpath are discarded.
+   */
+  public GreenFootprints(Path file, ClassBytesSource classBytes, List<Path> classpath) {
+    this.file = file;
+    this.classBytes = classBytes;
+    this.classpathKey = keyOf(classpath);
+    read();
+  }
+
+  /**
+   * Footprints kept in the directory named by {@value VerdictStore#CACHE_DIR_PROPERTY}, for the jvm's classpath.
+   * @return the footprints, or null if the property is not set.
+   */
+  public static GreenFootprints fromSystemProperties() {
+    String cacheDir = System.getProperty(VerdictStore.CACHE_DIR_PROPERTY);
+    if (cacheDir == null || cacheDir.isEmpty()) {
+      return null;
+    }
+    return new GreenFootprints(Paths.get(cacheDir, FILE),
+        ClassBytesSource.forLoader(EvictingClassLoader.class.getClassLoader()),
+        ClasspathClassBytesSource.expand(System.getProperty("java.class.path", "")));
+  }
+
+  /**
+   * Identifies a classpath across runs, see the class documentation.
+   */
+  private static String keyOf(List<Path> classpath) {
+    StringBuilder key = new StringBuilder();
+    for (Path entry : classpath) {
+      Path absolute = entry.toAbsolutePath().normalize();
+      if (Files.isDirectory(absolute)) {
+        key.append(absolute).append('\n');
+      } else if (!Files.isRegularFile(absolute)) {
+        key.append(absolute).append('\t').append(MISSING).append('\n');
+      } else if (!isManifestOnly(absolute)) {
+        try {
+          key.append(absolute).append('\t').append(Files.size(absolute)).append('\t')
+             .append(Files.getLastModifiedTime(absolute).toMillis()).append('\n');
+        } catch (IOException ioe) {
+          key.append(absolute).append('\t').append(MISSING).append('\n');
+        }
+      }
+    }
+    return VerdictStore.keyOf(key.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static boolean isManifestOnly(Path jar) {
+    try (JarFile file = new JarFile(jar.toFile())) {
+      return file.stream().allMatch(entry -> entry.getName().startsWith("META-INF/"));
+    } catch (IOException ioe) {
+      return false;
+    }
+  }
+
+  /**
+   * Whether running a test again could have a different outcome.
+   * @param test identifies the test and its configuration, stable between runs.
+   * @return true if the test passed with the same classpath and no class in its footprint has changed since.
+   */
+  public boolean isUnchanged(String test) {
+    Map<String, String> hashes = hashesByTest.get(test);
+    if (hashes == null) {
+      return false;
+    }
+    for (Map.Entry<String, String> hash : hashes.entrySet()) {
+      if (!hash.getValue().equals(currentHash(hash.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Record the footprint of a test that passed.
+   * @param test identifies the test and its configuration, stable between runs.
+   * @param classNames binary names of every class the test could have used, including the test class.
+   * @param resourceNames slash separated names of every resource the test could have read, found or not.
+   */
+  public void passed(String test, Collection<String> classNames, Collection<String> resourceNames) {
+    Map<String, String> hashes = new HashMap<>();
+    for (String className : classNames) {
+      hashes.put(className, currentHash(className));
+    }
+    for (String resourceName : resourceNames) {
+      hashes.put(RESOURCE_PREFIX + resourceName, currentHash(RESOURCE_PREFIX + resourceName));
+    }
+    hashesByTest.put(test, hashes);
+    changed = true;
+  }
+
+  /**
+   * Forget a test that did not pass, it will run next time.
+   * @param test identifies the test and its configuration, stable between runs.
+   */
+  public void failed(String test) {
+    if (hashesByTest.remove(test) != null) {
+      changed = true;
+    }
+  }
+
+  /**
+   * Forget the hashes of changed class files, they are read and hashed again when next needed.
+   * @param changed matches the binary names of changed classes.
+   */
+  public void invalidate(Predicate<String> changed) {
+    currentHashes.keySet().removeIf(name -> !name.startsWith(RESOURCE_PREFIX) && changed.test(name));
+  }
+
+  /**
+   * Forget the hashes of every resource, they are read and hashed again when next needed.
+   */
+  public void invalidateResources() {
+    currentHashes.keySet().removeIf(name -> name.startsWith(RESOURCE_PREFIX));
+  }
+
+  /**
+   * Write the footprints if any test was recorded.  Failure to write is logged, not thrown.
+   */
+  @Override
+  public void close() {
+    if (!changed) {
+      return;
+    }
+    changed = false;
+    List<String> lines = new ArrayList<>();
+    lines.add(CLASSPATH_PREFIX + classpathKey);
+    for (Map.Entry<String, Map<String, String>> test : hashesByTest.entrySet()) {
+      lines.add(TEST_PREFIX + test.getKey());
+      test.getValue().forEach((className, hash) -> lines.add(className + '\t' + hash));
+    }
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path written = Files.createTempFile(directory, FILE, ".tmp");
+      Files.write(written, lines, StandardCharsets.UTF_8);
+      Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not write green footprints " + file, ioe);
+    }
+  }
+
+  private String currentHash(String footprintName) {
+    return currentHashes.computeIfAbsent(footprintName, name -> {
+      try {
+        byte[] bytes = classBytes.read(name.startsWith(RESOURCE_PREFIX) ? name.substring(RESOURCE_PREFIX.length())
+            : name.replace('.', '/') + ".class");
+        return bytes == null ? MISSING : VerdictStore.keyOf(bytes);
+      } catch (IOException ioe) {
+        return MISSING + ioe;
+      }
+    });
+  }
+
+  private void read() {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try {
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      if (lines.isEmpty() || !lines.get(0).equals(CLASSPATH_PREFIX + classpathKey)) {
+        return;
+      }
+      Map<String, String> hashes = null;
+      for (String line : lines.subList(1, lines.size())) {
+        int tab = line.indexOf('\t');
+        if (line.startsWith(TEST_PREFIX)) {
+          hashes = new HashMap<>();
+          hashesByTest.put(line.substring(TEST_PREFIX.length()), hashes);
+        } else if (hashes != null && tab > 0) {
+          hashes.put(line.substring(0, tab), line.substring(tab + 1));
+        }
+      }
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not read green footprints " + file, ioe);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.FieldVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+/**
+ * <p>
+ * Transformer for loaders that reset static state between tests rather than evict the classes holding it.  Classes that
+ * pass {@link ClassContainsStaticInitialization} are untouched, the others are rewritten so their static initializer can
+ * be run again:
+ * </p>
+ * <ul>
+ * <li>the static initializer is renamed {@value #CLINIT}, a new one calls it then registers the class with its
+ * {@link EvictingClassLoader}, so classes are reset in the order they were initialized,</li>
+ * <li>static fields that are not compile time constants lose their final modifier,</li>
+ * <li>a {@value #RESET} method sets those fields back to their default values and calls {@value #CLINIT} again.</li>
+ * </ul>
+ * <p>
+ * Interfaces and enumerations, whose constants are held onto by other classes, and class files too old for class
+ * literals are still evicted.  Generated code calls {@link #initialized(Class)}, so this package must be delegated, as
+ * {@link ClassLoaderPolicy} does for every policy that resets static state.
+ * </p>
+ * @author rex
+ */
+public class ResettingStaticTransformer implements ClassFileTransformer {
+
+  /**
+   * Name given to the original static initializer of a rewritten class.
+   */
+  public static final String CLINIT = "$advisedtesting$clinit";
+
+  /**
+   * Name of the static method added to rewritten classes that resets their static state.
+   */
+  public static final String RESET = "$advisedtesting$reset";
+
+  private static final int MAJOR_VERSION_OFFSET = 6;
+
+  private final EvictingStaticTransformer evicting;
+
+  public ResettingStaticTransformer() {
+    this(VerdictStore.fromSystemProperties());
+  }
+
+  /**
+   * Transformer backed by a persistent verdict store.
+   * @param verdictStore consulted before scanning a class, may be null.
+   */
+  public ResettingStaticTransformer(VerdictStore verdictStore) {
+    this.evicting = new EvictingStaticTransformer(false, verdictStore);
+  }
+
+  /**
+   * Make classes with static state resettable.
+   * @param loader the parent class loader, ignored.
+   * @param className the name of the class to verify.
+   * @param classBeingRedefined ignored.
+   * @param protectionDomain ignored.
+   * @param classfileBuffer contains the bytes of a java class to be transformed.
+   * @return null if the class has no static state, otherwise the rewritten class, or a thrown {@link ClassFormatError}
+   *         if the class can not be made resettable.
+   */
+  @Override
+  public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+          ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+    try {
+      return evicting.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    } catch (ClassFormatError stateful) {
+      byte[] resettable = makeResettable(classfileBuffer);
+      if (resettable == null) {
+        throw stateful;
+      }
+      return resettable;
+    }
+  }
+
+  /**
+   * Called by the static initializer of rewritten classes, once the original initializer has completed.
+   * @param clazz the class that was initialized.
+   */
+  public static void initialized(Class<?> clazz) {
+    if (clazz.getClassLoader() instanceof EvictingClassLoader) {
+      ((EvictingClassLoader) clazz.getClassLoader()).initialized(clazz);
+    }
+  }
+
+  /**
+   * Rewrite a class as described by this class's documentation.
+   * @param classfileBuffer the original class.
+   * @return the rewritten class, or null for interfaces, enumerations and class files before java 5.
+   */
+  static byte[] makeResettable(byte[] classfileBuffer) {
+    ClassReader reader = new ClassReader(classfileBuffer);
+    if ((reader.getAccess() & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ENUM)) != 0
+        || reader.readUnsignedShort(MAJOR_VERSION_OFFSET) < Opcodes.V1_5) {
+      return null;
+    }
+    ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+    reader.accept(new ResettableClassVisitor(writer), 0);
+    return writer.toByteArray();
+  }
+
+  private static final class ResettableClassVisitor extends ClassVisitor {
+
+    private final List<String[]> resetFields = new ArrayList<>();
+
+    private String className;
+
+    private boolean hasClinit = false;
+
+    private ResettableClassVisitor(ClassVisitor writer) {
+      super(Opcodes.ASM9, writer);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+      className = name;
+      super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+      boolean isConstant = (access & Opcodes.ACC_FINAL) != 0 && value != null;
+      if (isStatic && !isConstant) {
+        resetFields.add(new String[] {name, desc});
+        return super.visitField(access & ~Opcodes.ACC_FINAL, name, desc, signature, value);
+      }
+      return super.visitField(access, name, desc, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      if ("<clinit>".equals(name)) {
+        hasClinit = true;
+        return super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, CLINIT, desc, signature,
+            exceptions);
+      }
+      return super.visitMethod(access, name, desc, signature, exceptions);
+    }
+
+    @Override
+    public void visitEnd() {
+      MethodVisitor clinit = super.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+      clinit.visitCode();
+      callOriginalClinit(clinit);
+      clinit.visitLdcInsn(Type.getObjectType(className));
+      clinit.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(ResettingStaticTransformer.class), "initialized",
+          "(Ljava/lang/Class;)V", false);
+      clinit.visitInsn(Opcodes.RETURN);
+      clinit.visitMaxs(0, 0);
+      clinit.visitEnd();
+
+      MethodVisitor reset = super.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, RESET, "()V",
+          null, null);
+      reset.visitCode();
+      for (String[] field : resetFields) {
+        pushDefaultValue(reset, field[1]);
+        reset.visitFieldInsn(Opcodes.PUTSTATIC, className, field[0], field[1]);
+      }
+      callOriginalClinit(reset);
+      reset.visitInsn(Opcodes.RETURN);
+      reset.visitMaxs(0, 0);
+      reset.visitEnd();
+      super.visitEnd();
+    }
+
+    private void callOriginalClinit(MethodVisitor method) {
+      if (hasClinit) {
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, className, CLINIT, "()V", false);
+      }
+    }
+
+    private static void pushDefaultValue(MethodVisitor method, String desc) {
+      switch (desc.charAt(0)) {
+        case 'J':
+          method.visitInsn(Opcodes.LCONST_0);
+          break;
+        case 'F':
+          method.visitInsn(Opcodes.FCONST_0);
+          break;
+        case 'D':
+          method.visitInsn(Opcodes.DCONST_0);
+          break;
+        case 'L':
+        case '[':
+          method.visitInsn(Opcodes.ACONST_NULL);
+          break;
+        default:
+          method.visitInsn(Opcodes.ICONST_0);
+          break;
+      }
+    }
+  }
+}
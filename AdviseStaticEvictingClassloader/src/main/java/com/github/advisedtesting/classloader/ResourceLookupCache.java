@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Remembers where a parent class loader finds resources, including those it does not find, so that any number of
+ * {@link EvictingClassLoader}s sharing the parent search the classpath at most once per resource name.  Component scans
+ * and configuration lookups repeat the same probes in every class loader, most of them for resources that do not exist.
+ * </p>
+ * <p>
+ * Only valid while the classpath is unchanged, {@link #invalidate()} once resources are created or deleted, see
+ * {@link ClassFileWatcher.Listener#resourcesChanged()}.
+ * </p>
+ * @author rex
+ */
+public class ResourceLookupCache {
+
+  private final ClassLoader parent;
+
+  private final Map<String, Optional<URL>> resources = new ConcurrentHashMap<>();
+
+  private final Map<String, List<URL>> allResources = new ConcurrentHashMap<>();
+
+  public ResourceLookupCache(ClassLoader parent) {
+    this.parent = parent;
+  }
+
+  public ClassLoader getParent() {
+    return parent;
+  }
+
+  /**
+   * The parent's answer to {@link ClassLoader#getResource(String)}.
+   * @param name slash separated resource name.
+   * @return the resource's url, or null if the parent does not find it.
+   */
+  public URL getResource(String name) {
+    Optional<URL> resource = resources.get(name);
+    if (resource == null) {
+      resource = Optional.ofNullable(parent.getResource(name));
+      resources.putIfAbsent(name, resource);
+    }
+    return resource.orElse(null);
+  }
+
+  /**
+   * The parent's answer to {@link ClassLoader#getResources(String)}.
+   * @param name slash separated resource name.
+   * @return the urls of every resource with the name, in classpath order.
+   * @throws IOException if the parent's search fails, failures are not remembered.
+   */
+  public Enumeration<URL> getResources(String name) throws IOException {
+    List<URL> urls = allResources.get(name);
+    if (urls == null) {
+      urls = Collections.unmodifiableList(Collections.list(parent.getResources(name)));
+      allResources.putIfAbsent(name, urls);
+    }
+    return Collections.enumeration(urls);
+  }
+
+  /**
+   * Forget every lookup, the next of each name searches the classpath again.
+   */
+  public void invalidate() {
+    resources.clear();
+    allResources.clear();
+  }
+}
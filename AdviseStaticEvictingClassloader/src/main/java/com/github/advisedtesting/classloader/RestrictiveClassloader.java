@@ -68,6 +68,62 @@ public @interface RestrictiveClassloader {
    * @return true by default.
    */
   boolean transformLinkageErrors() default true;
+
+  /**
+   * <p>
+   * If true every test runs in its own class loader, so static state initialized by one test (in classes that are allowed
+   * to have it, such as enumerations) can never be seen by another.  Otherwise all tests sharing this configuration share
+   * a class loader.
+   * </p>
+   * <p>
+   * Loaders are prepared on a background thread, see {@link #poolSize()} and {@link #warmClasses()}.
+   * </p>
+   * @return false by default.
+   */
+  boolean isolatePerTest() default false;
+
+  /**
+   * Only used if {@link #isolatePerTest()} is true.  Tests with equal configurations share a pool, sized by the first of
+   * them to run.
+   * @return the number of loaders to keep prepared ahead of the tests that will use them.
+   */
+  int poolSize() default 2;
+
+  /**
+   * Only used if {@link #isolatePerTest()} is true.  Like {@link #poolSize()}, taken from the first test of a pool.
+   * @return binary names of classes to define in each loader before a test is given it, typically the test class.
+   */
+  String[] warmClasses() default {};
+
+  /**
+   * <p>
+   * If true classes with no static state are defined once, in a loader shared by every loader with the same delegating
+   * packages, rather than once per loader.  Most useful with {@link #isolatePerTest()}, where it saves defining them
+   * again for every test.
+   * </p>
+   * <p>
+   * Classes are shared a package at a time, and only packages whose classes, and the classes they refer to, all pass
+   * the static state check.  Enumerations and classes with static initializers are defined per loader, as each loader
+   * must create its own instances of them.
+   * </p>
+   * @return false by default.
+   */
+  boolean shareVerifiedClasses() default false;
+
+  /**
+   * <p>
+   * If true classes with static state are rewritten so that state can be reset, see {@link ResettingStaticTransformer},
+   * instead of refusing to load.  All tests sharing this configuration share a class loader, which is reset each time no
+   * test is running in it, so every test sees freshly initialized static state without waiting on a new class loader.
+   * This takes precedence over {@link #isolatePerTest()} and {@link #warnOnly()}.
+   * </p>
+   * <p>
+   * Interfaces and enumerations with static state still refuse to load.  Static state is only reset to what the static
+   * initializers produce, anything they do outside the loader (files, system properties) is not undone.
+   * </p>
+   * @return false by default.
+   */
+  boolean resetStaticState() default false;
   
   /**
    * {@link #implementedBy()} returns a Class that implements {@link org.aopalliance.intercept.MethodInterceptor}.
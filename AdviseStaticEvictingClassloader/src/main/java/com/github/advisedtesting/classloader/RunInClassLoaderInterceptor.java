@@ -22,53 +22,207 @@
  */
 package com.github.advisedtesting.classloader;
 
+import java.io.Closeable;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.github.advisedtesting.core.ConstraintException;
 import com.github.advisedtesting.core.ContextAwareMethodInvocation;
 
-public class RunInClassLoaderInterceptor implements MethodInterceptor {
+/**
+ * <p>
+ * Runs advised test methods in an {@link EvictingClassLoader} configured by the method's {@link RestrictiveClassloader}.
+ * Each annotation is resolved once to a {@link ClassLoaderPolicy}, and tests with equal policies share a class loader.
+ * </p>
+ * <p>
+ * The work done by those class loaders is summed by {@link #getTotals()}, also exposed as a {@link ClassLoadingMetricsMXBean}
+ * registered under {@link #OBJECT_NAME} with an id key unique to this interceptor, until it is closed.
+ * </p>
+ * <p>
+ * If {@value VerdictStore#CACHE_DIR_PROPERTY} is set the classes each test loads are recorded as {@link ClassFootprints},
+ * and on later runs defined on background threads as soon as a class loader is built, or while warming pooled loaders.
+ * The classes and resources that could have been used by each passing test are hashed as {@link GreenFootprints}, tests
+ * are skipped (with a {@link ConstraintException}) while their footprint is unchanged if
+ * {@value GreenFootprints#SKIP_UNCHANGED_PROPERTY} is true.
+ * </p>
+ * <p>
+ * Static state found by warn only loaders is reported once per class when the interceptor is closed, see
+ * {@link ViolationReporter}.
+ * </p>
+ * <p>
+ * If {@value ClassFileWatcher#WATCH_PROPERTY} is true the classpath directories are watched, and when classes are
+ * recompiled their verdicts are forgotten and the class loaders that defined them are no longer used.  Resource lookups,
+ * shared by every class loader of the interceptor, are forgotten whenever any file in those directories changes.
+ * </p>
+ * @author rex
+ */
+public class RunInClassLoaderInterceptor implements MethodInterceptor, ClassLoadingMetricsMXBean, Closeable {
+
+  /**
+   * Domain and type of the JMX object names of interceptors.
+   */
+  public static final String OBJECT_NAME = "com.github.advisedtesting.classloader:type=RunInClassLoaderInterceptor";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RunInClassLoaderInterceptor.class);
+
+  private static final int PRELOAD_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  private final Map<RestrictiveClassloader, ClassLoaderPolicy> policies = new ConcurrentHashMap<>();
+
+  private final EvictingClassLoaderCache<ClassLoaderPolicy> classloaderByPolicy = EvictingClassLoaderCache.fromSystemProperties();
+
+  private final Map<ClassLoaderPolicy, EvictingClassLoaderPool> poolsByPolicy = new ConcurrentHashMap<>();
+
+  private final Map<DelegationMatcher, SharedVerifiedClassLoader> sharedTiers = new ConcurrentHashMap<>();
+
+  private final Map<SharedVerifiedClassLoader, Integer> tierUsers = new HashMap<>();
+
+  private final ClassVerdictCache enforcedVerdicts = new ClassVerdictCache();
+
+  private final ClassVerdictCache warnedVerdicts = new ClassVerdictCache();
+
+  private final ClassVerdictCache resetVerdicts = new ClassVerdictCache();
+
+  private final Set<ClassLoadingMetrics> liveMetrics = new HashSet<>();
 
-  private final Map<RestrictiveClassloader, EvictingClassLoader> classloaderBySupplier 
-      = new ConcurrentHashMap<>();
+  private ClassLoadingMetrics.Snapshot closedTotals = ClassLoadingMetrics.Snapshot.EMPTY;
+
+  private final ResourceLookupCache resourceLookups = new ResourceLookupCache(getClass().getClassLoader());
+
+  private final ClassLoaderLeakDetector leakDetector = new ClassLoaderLeakDetector();
+
+  private final ViolationReporter violations = ViolationReporter.fromSystemProperties();
+
+  private final ClassFootprints footprints = ClassFootprints.fromSystemProperties();
+
+  private final GreenFootprints greenFootprints = GreenFootprints.fromSystemProperties();
+
+  private final boolean skipUnchanged = greenFootprints != null && Boolean.getBoolean(GreenFootprints.SKIP_UNCHANGED_PROPERTY);
+
+  private final ExecutorService preloader = Executors.newFixedThreadPool(PRELOAD_THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "advisedtesting-classloader-preloader");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final ObjectName objectName;
+
+  private final ClassFileWatcher watcher;
+
+  /**
+   * Constructed once per jvm by the test context, registers the metrics MBean.
+   */
+  public RunInClassLoaderInterceptor() {
+    ObjectName registered = null;
+    try {
+      registered = new ObjectName(OBJECT_NAME + ",id=" + Integer.toHexString(System.identityHashCode(this)));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+    } catch (JMException | SecurityException ex) {
+      LOGGER.warn("Class loading metrics will not be available over JMX", ex);
+      registered = null;
+    }
+    this.objectName = registered;
+    this.watcher = ClassFileWatcher.fromSystemProperties(new ClassFileWatcher.Listener() {
+
+      @Override
+      public void classesChanged(Predicate<String> changed) {
+        RunInClassLoaderInterceptor.this.classesChanged(changed);
+      }
 
+      @Override
+      public void resourcesChanged() {
+        resourceLookups.invalidate();
+        if (greenFootprints != null) {
+          greenFootprints.invalidateResources();
+        }
+      }
+    });
+  }
   
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
     if (ContextAwareMethodInvocation.class.isAssignableFrom(invocation.getClass())) {
       ContextAwareMethodInvocation cinvocation = ((ContextAwareMethodInvocation) invocation);
       RestrictiveClassloader rc = (RestrictiveClassloader) cinvocation.getTargetAnnotation();
-      Supplier<Stream<String>> packageSupplier = convertToSingleSupplier(rc);
-      EvictingClassLoader targetClassLoader = classloaderBySupplier.computeIfAbsent(rc, targetClass -> {
-        boolean warnOnly = rc.warnOnly() && InDeveloperEnvironment.inDev();
-        EvictingStaticTransformer transformer = new EvictingStaticTransformer(warnOnly);
-        return new EvictingClassLoader(packageSupplier.get().collect(Collectors.toList()),
-                transformer, this.getClass().getClassLoader());
-      });
+      ClassLoaderPolicy policy = policies.computeIfAbsent(rc, ClassLoaderPolicy::of);
+      String test = testOf(policy, invocation.getMethod());
+      if (skipUnchanged && test != null && greenFootprints.isUnchanged(test)) {
+        throw new ConstraintException("No class loaded by " + test + " has changed since it last passed");
+      }
+      EvictingClassLoader targetClassLoader;
+      EvictingClassLoaderCache<ClassLoaderPolicy>.Lease lease = null;
+      if (rc.isolatePerTest() && !policy.isResetStaticState()) {
+        targetClassLoader = poolsByPolicy.computeIfAbsent(policy, key -> new EvictingClassLoaderPool(
+            () -> newClassLoader(key), rc.poolSize(), warmClasses(rc, key))).take();
+      } else {
+        lease = classloaderByPolicy.acquire(policy, key -> preload(key, newClassLoader(key)));
+        targetClassLoader = lease.getLoader();
+      }
+      int loadedBefore = targetClassLoader.getLoadedClassCount();
+      boolean passed = false;
+      Throwable failure = null;
       try {
         Thread.currentThread().setContextClassLoader(targetClassLoader);
-        return invocation.proceed();
+        Object result = invocation.proceed();
+        passed = true;
+        return result;
       } catch (InvocationTargetException ite) {
-        throw ite.getCause();
+        failure = ite.getCause();
+        throw failure;
       } catch (NoClassDefFoundError | ClassFormatError er) {
         String name = er.getMessage().replace('/', '.');
         String errorMsg = targetClassLoader.getError(name);
         if (errorMsg != null) {
           NoClassDefFoundError error = new NoClassDefFoundError(errorMsg);
           error.setStackTrace(er.getStackTrace());
-          throw error;
+          failure = error;
         } else {
-          throw er;
+          failure = er;
         }
+        throw failure;
+      } catch (Throwable thrown) {
+        failure = thrown;
+        throw thrown;
       } finally {
         Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
+        try {
+          record(policy, invocation.getMethod(), test, targetClassLoader, loadedBefore, passed);
+        } catch (RuntimeException ex) {
+          cleanupFailed(test, failure, ex);
+        }
+        try {
+          if (lease != null) {
+            lease.close();
+          } else {
+            leakDetector.released(targetClassLoader);
+            targetClassLoader.close();
+          }
+        } catch (RuntimeException ex) {
+          cleanupFailed(test, failure, ex);
+        }
       }
     } else {
       throw new IllegalStateException(
@@ -77,14 +231,256 @@ public class RunInClassLoaderInterceptor implements MethodInterceptor {
   }
 
 
-  private Supplier<Stream<String>> convertToSingleSupplier(RestrictiveClassloader rc) {
-    Class<? extends  Supplier<Stream<String>>>[] supplierClasses = rc.delegatingPackagesSuppliers();
-    return () -> Stream.of(supplierClasses).map(s_class -> {
+  /**
+   * Failures after a test has run must not replace its outcome, they are added to its failure or logged if it passed.
+   */
+  private static void cleanupFailed(String test, Throwable failure, RuntimeException ex) {
+    if (failure != null) {
+      failure.addSuppressed(ex);
+    } else {
+      LOGGER.warn("Could not clean up after " + test, ex);
+    }
+  }
+
+  private EvictingClassLoader newClassLoader(ClassLoaderPolicy policy) {
+    ClassFileTransformer transformer;
+    ClassVerdictCache verdicts;
+    if (policy.isResetStaticState()) {
+      transformer = new ResettingStaticTransformer();
+      verdicts = resetVerdicts;
+    } else {
+      transformer = new EvictingStaticTransformer(policy.isWarnOnly(), VerdictStore.fromSystemProperties(), violations);
+      verdicts = policy.isWarnOnly() ? warnedVerdicts : enforcedVerdicts;
+    }
+    DelegationMatcher delegation = policy.getDelegation();
+    SharedVerifiedClassLoader sharedTier = policy.isShareVerifiedClasses() ? useTier(delegation) : null;
+    EvictingClassLoader loader = new EvictingClassLoader(delegation, transformer, this.getClass().getClassLoader(),
+            verdicts, sharedTier, resourceLookups);
+    ClassLoadingMetrics metrics = loader.getMetrics();
+    opened(metrics);
+    loader.whenClosed(() -> {
+      closed(metrics);
+      if (sharedTier != null) {
+        releaseTier(sharedTier);
+      }
+    });
+    leakDetector.track(loader, policy.toString());
+    return loader;
+  }
+
+  /**
+   * The current tier of a delegation policy, counting the loader about to be built with it as a user.
+   */
+  private SharedVerifiedClassLoader useTier(DelegationMatcher delegation) {
+    synchronized (tierUsers) {
+      SharedVerifiedClassLoader tier = sharedTiers.computeIfAbsent(delegation, key -> {
+        SharedVerifiedClassLoader built = new SharedVerifiedClassLoader(key, this.getClass().getClassLoader());
+        opened(built.getMetrics());
+        return built;
+      });
+      tierUsers.merge(tier, 1, Integer::sum);
+      return tier;
+    }
+  }
+
+  /**
+   * A loader built with a tier was closed, the tier is closed with its last loader once it is no longer current.
+   */
+  private void releaseTier(SharedVerifiedClassLoader tier) {
+    synchronized (tierUsers) {
+      if (tierUsers.merge(tier, -1, Integer::sum) > 0) {
+        return;
+      }
+      tierUsers.remove(tier);
+      if (sharedTiers.containsValue(tier)) {
+        return;
+      }
+    }
+    closeTier(tier);
+  }
+
+  private void closeTier(SharedVerifiedClassLoader tier) {
+    tier.close();
+    closed(tier.getMetrics());
+  }
+
+  private List<String> warmClasses(RestrictiveClassloader rc, ClassLoaderPolicy policy) {
+    List<String> warmClasses = new ArrayList<>(Arrays.asList(rc.warmClasses()));
+    if (footprints != null) {
+      warmClasses.addAll(footprints.recorded(policy.toString()));
+    }
+    return warmClasses;
+  }
+
+  /**
+   * Define the recorded footprints of a configuration's tests, shared between the preloading threads.
+   */
+  private EvictingClassLoader preload(ClassLoaderPolicy policy, EvictingClassLoader loader) {
+    if (footprints == null) {
+      return loader;
+    }
+    List<String> recorded = footprints.recorded(policy.toString());
+    for (int thread = 0; thread < PRELOAD_THREADS && thread < recorded.size(); thread++) {
+      List<String> share = new ArrayList<>();
+      for (int i = thread; i < recorded.size(); i += PRELOAD_THREADS) {
+        share.add(recorded.get(i));
+      }
       try {
-        return s_class.newInstance();
-      } catch (InstantiationException | IllegalAccessException ex) {
-        throw new IllegalArgumentException("Class could not be instantiated " + s_class, ex);
+        preloader.execute(() -> loader.preload(share));
+      } catch (RejectedExecutionException ree) {
+        //closed concurrently.
+      }
+    }
+    return loader;
+  }
+
+  /**
+   * Tests are identified by the declaring class and name of their method, and their loader configuration.
+   */
+  private static String testOf(ClassLoaderPolicy policy, Method method) {
+    if (method == null) {
+      return null;
+    }
+    return method.getDeclaringClass().getName() + '#' + method.getName() + ' '
+        + VerdictStore.keyOf(policy.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void record(ClassLoaderPolicy policy, Method method, String test, EvictingClassLoader loader, int loadedBefore,
+          boolean passed) {
+    if (test == null) {
+      return;
+    }
+    if (footprints != null) {
+      footprints.record(policy.toString(), method.getDeclaringClass().getName() + '#' + method.getName(),
+          loader.getLoadedClassNames(loadedBefore));
+    }
+    if (greenFootprints != null && passed) {
+      Set<String> footprint = loader.getFootprint();
+      footprint.add(method.getDeclaringClass().getName());
+      greenFootprints.passed(test, footprint, loader.getResourceNames());
+    } else if (greenFootprints != null) {
+      greenFootprints.failed(test);
+    }
+  }
+
+  /**
+   * <p>
+   * Forget what is known of recompiled classes, and stop using the class loaders that defined them.  Verdicts of unchanged
+   * classes are kept, so replacement loaders only scan what changed.  Called by the {@link ClassFileWatcher}.
+   * </p>
+   * <p>
+   * New loaders get new shared tiers, as the old tiers decided what to share from the old class files.  Loaders that
+   * defined no changed class keep using their tier, which is closed once the last of them is closed.
+   * </p>
+   * @param changed matches the binary names of recompiled classes.
+   */
+  public void classesChanged(Predicate<String> changed) {
+    enforcedVerdicts.invalidate(changed);
+    warnedVerdicts.invalidate(changed);
+    resetVerdicts.invalidate(changed);
+    if (greenFootprints != null) {
+      greenFootprints.invalidate(changed);
+    }
+    classloaderByPolicy.evictIf(loader -> loader.getFootprint().stream().anyMatch(changed));
+    for (ClassLoaderPolicy policy : new ArrayList<>(poolsByPolicy.keySet())) {
+      EvictingClassLoaderPool pool = poolsByPolicy.remove(policy);
+      if (pool != null) {
+        pool.close();
       }
-    }).flatMap(s -> s.get());
+    }
+    List<SharedVerifiedClassLoader> unused = new ArrayList<>();
+    synchronized (tierUsers) {
+      for (DelegationMatcher delegation : new ArrayList<>(sharedTiers.keySet())) {
+        SharedVerifiedClassLoader tier = sharedTiers.remove(delegation);
+        if (tier != null && !tierUsers.containsKey(tier)) {
+          unused.add(tier);
+        }
+      }
+    }
+    unused.forEach(this::closeTier);
+    LOGGER.debug("Class files changed, stale class loaders evicted");
+  }
+
+  /**
+   * Programmatic access to the class loading metrics, including loaders already discarded by per test isolation.
+   * @return counters summed over every class loader built by this interceptor.
+   */
+  @Override
+  public ClassLoadingMetrics.Snapshot getTotals() {
+    synchronized (liveMetrics) {
+      ClassLoadingMetrics.Snapshot totals = closedTotals;
+      for (ClassLoadingMetrics metrics : liveMetrics) {
+        totals = totals.plus(metrics.snapshot());
+      }
+      return totals;
+    }
+  }
+
+  private void opened(ClassLoadingMetrics metrics) {
+    synchronized (liveMetrics) {
+      liveMetrics.add(metrics);
+    }
+  }
+
+  /**
+   * Fold the counters of a closed loader into the running total, so that nothing keeps them once the loader is gone.
+   */
+  private void closed(ClassLoadingMetrics metrics) {
+    synchronized (liveMetrics) {
+      if (liveMetrics.remove(metrics)) {
+        closedTotals = closedTotals.plus(metrics.snapshot());
+      }
+    }
+  }
+
+  /**
+   * Class loaders that should have been garbage collected, per test loaders once their test has run, and shared loaders
+   * once evicted from the cache.
+   * @return the leak detector tracking this interceptor's class loaders.
+   */
+  public ClassLoaderLeakDetector getLeakDetector() {
+    return leakDetector;
+  }
+
+  @Override
+  public String[] getRetainedClassLoaders() {
+    return leakDetector.report().stream().map(ClassLoaderLeakDetector.Leak::toString).toArray(String[]::new);
+  }
+
+  /**
+   * Close every cached, pooled and shared class loader, stop warming pooled class loaders, report static state found in
+   * warn only mode, write the class footprints, and unregister the metrics MBean.  Called by the test context once all
+   * tests have run.
+   */
+  @Override
+  public void close() {
+    preloader.shutdownNow();
+    if (watcher != null) {
+      watcher.close();
+    }
+    classloaderByPolicy.close();
+    poolsByPolicy.values().forEach(EvictingClassLoaderPool::close);
+    List<SharedVerifiedClassLoader> tiers;
+    synchronized (tierUsers) {
+      tiers = new ArrayList<>(sharedTiers.values());
+      tiers.addAll(tierUsers.keySet());
+      sharedTiers.clear();
+      tierUsers.clear();
+    }
+    new LinkedHashSet<>(tiers).forEach(this::closeTier);
+    violations.close();
+    if (footprints != null) {
+      footprints.close();
+    }
+    if (greenFootprints != null) {
+      greenFootprints.close();
+    }
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      } catch (JMException ex) {
+        LOGGER.debug("MBean already unregistered " + objectName, ex);
+      }
+    }
   }
 }
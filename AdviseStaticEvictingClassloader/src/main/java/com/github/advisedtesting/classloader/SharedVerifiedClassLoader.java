@@ -0,0 +1,299 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+/**
+ * <p>
+ * Parent tier of {@link EvictingClassLoader}s that defines classes with no static state once, for every loader built
+ * with it, leaving the loaders to define only the classes that need isolation.
+ * </p>
+ * <p>
+ * Sharing is decided a package at a time, since package private access only works between classes of one loader.  A
+ * package is shared if every class in it passes {@link ClassContainsStaticInitialization}, is not an enum and has no
+ * static initializer, and every package its classes refer to, outside the {@link DelegationMatcher}, is shared as well.
+ * Enum constants and values built by a static initializer are singletons whose fields a test may change, even when
+ * the scanner allows them in a per test loader.  That closure is what lets the JVM link a
+ * shared class without ever needing a class only an evicting loader may define.
+ * </p>
+ * <p>
+ * Packages are enumerated from the classpath index, so nothing is shared unless class bytes come from a
+ * {@link ClasspathClassBytesSource}.  Decisions are kept for the life of the loader.
+ * </p>
+ * @author rex
+ */
+public class SharedVerifiedClassLoader extends ClassLoader implements Closeable {
+
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
+
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final DelegationMatcher delegation;
+
+  private final ClassBytesSource classBytes;
+
+  private final ClassContainsStaticInitialization scanner = new ClassContainsStaticInitialization(true);
+
+  private final Map<String, Boolean> shareablePackages = new ConcurrentHashMap<>();
+
+  private final ClassLoadingMetrics metrics = new ClassLoadingMetrics();
+
+  private final List<String> definedNames = new ArrayList<>();
+
+  private volatile Map<String, Set<String>> classesByPackage;
+
+  private volatile boolean closed = false;
+
+  /**
+   * Build a tier reading the same class files as an {@link EvictingClassLoader} built without a {@link ClassBytesSource}.
+   * @param delegation must be the policy of every loader built with this tier.
+   * @param parent the class loader delegated to, must be the parent of every loader built with this tier.
+   */
+  public SharedVerifiedClassLoader(DelegationMatcher delegation, ClassLoader parent) {
+    this(delegation, parent, ClassBytesSource.forLoader(EvictingClassLoader.class.getClassLoader()));
+  }
+
+  /**
+   * Build a tier.
+   * @param delegation must be the policy of every loader built with this tier.
+   * @param parent the class loader delegated to, must be the parent of every loader built with this tier.
+   * @param classBytes where class files are read from, nothing is shared unless it is a {@link ClasspathClassBytesSource}.
+   */
+  public SharedVerifiedClassLoader(DelegationMatcher delegation, ClassLoader parent, ClassBytesSource classBytes) {
+    super(parent);
+    this.delegation = delegation;
+    this.classBytes = classBytes;
+  }
+
+  /**
+   * Called by an {@link EvictingClassLoader} before it defines a class itself.
+   * @param name binary name of a class outside the delegation policy.
+   * @return the shared class, or null if the evicting loader should define its own.
+   */
+  Class<?> findShared(String name) {
+    if (closed || !isShareable(packageOf(name))) {
+      return null;
+    }
+    try {
+      return loadClass(name, false);
+    } catch (ClassNotFoundException notShared) {
+      return null;
+    }
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    if (delegation.delegates(name)) {
+      return super.loadClass(name, resolve);
+    }
+    synchronized (getClassLoadingLock(name)) {
+      Class<?> loaded = findLoadedClass(name);
+      if (loaded != null) {
+        return loaded;
+      }
+      if (closed || !isShareable(packageOf(name))) {
+        throw new ClassNotFoundException(name + " is not shared by " + SharedVerifiedClassLoader.class.getSimpleName());
+      }
+      long start = System.nanoTime();
+      byte[] bytes = read(name);
+      if (bytes == null) {
+        throw new ClassNotFoundException(name);
+      }
+      long read = System.nanoTime();
+      metrics.read(bytes.length, read - start);
+      Class<?> cl = defineClass(name, bytes, 0, bytes.length);
+      metrics.defined(System.nanoTime() - read);
+      synchronized (definedNames) {
+        definedNames.add(name);
+      }
+      return cl;
+    }
+  }
+
+  private boolean isShareable(String packageName) {
+    Boolean known = shareablePackages.get(packageName);
+    if (known != null) {
+      return known;
+    }
+    Map<String, Set<String>> byPackage = classesByPackage();
+    Set<String> visited = new HashSet<>();
+    Deque<String> pending = new ArrayDeque<>();
+    visited.add(packageName);
+    pending.add(packageName);
+    while (!pending.isEmpty()) {
+      String current = pending.remove();
+      Boolean decided = shareablePackages.get(current);
+      if (Boolean.FALSE.equals(decided) || decided == null && !addReferencedPackages(current, byPackage, visited, pending)) {
+        shareablePackages.put(current, Boolean.FALSE);
+        shareablePackages.put(packageName, Boolean.FALSE);
+        return false;
+      }
+    }
+    for (String shared : visited) {
+      shareablePackages.put(shared, Boolean.TRUE);
+    }
+    return true;
+  }
+
+  /**
+   * Scan every class of a package, queueing the packages they refer to.
+   * @return false if a class of the package has static state, or refers to a class outside the index.
+   */
+  private boolean addReferencedPackages(String packageName, Map<String, Set<String>> byPackage, Set<String> visited,
+          Deque<String> pending) {
+    Set<String> names = byPackage.get(packageName);
+    if (names == null) {
+      return false;
+    }
+    for (String name : names) {
+      byte[] bytes = read(name);
+      if (bytes == null || !scanner.apply(bytes).isEmpty() || hasSingletons(bytes)) {
+        return false;
+      }
+      Set<String> references = ClassReferences.of(bytes);
+      if (references == null) {
+        return false;
+      }
+      for (String reference : references) {
+        if (delegation.delegates(reference)) {
+          continue;
+        }
+        String referencedPackage = packageOf(reference);
+        Set<String> indexed = byPackage.get(referencedPackage);
+        if ((indexed == null || !indexed.contains(reference)) && read(reference) != null) {
+          return false;
+        }
+        if (indexed != null && visited.add(referencedPackage)) {
+          pending.add(referencedPackage);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Enums, and classes with a static initializer, hold instances created once per defining loader.
+   */
+  private static boolean hasSingletons(byte[] bytes) {
+    ClassReader reader = new ClassReader(bytes);
+    if ((reader.getAccess() & Opcodes.ACC_ENUM) != 0) {
+      return true;
+    }
+    boolean[] initializer = new boolean[1];
+    reader.accept(new ClassVisitor(ClassContainsStaticInitialization.ASM_API_VERSION) {
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        if ("<clinit>".equals(name)) {
+          initializer[0] = true;
+        }
+        return null;
+      }
+    }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return initializer[0];
+  }
+
+  private Map<String, Set<String>> classesByPackage() {
+    Map<String, Set<String>> built = classesByPackage;
+    if (built == null) {
+      synchronized (this) {
+        built = classesByPackage;
+        if (built == null) {
+          built = new HashMap<>();
+          if (classBytes instanceof ClasspathClassBytesSource) {
+            for (String fileName : ((ClasspathClassBytesSource) classBytes).indexedClassFileNames()) {
+              if (fileName.endsWith(CLASS_SUFFIX) && !fileName.startsWith("META-INF/")) {
+                String name = fileName.substring(0, fileName.length() - CLASS_SUFFIX.length()).replace('/', '.');
+                built.computeIfAbsent(packageOf(name), key -> new HashSet<>()).add(name);
+              }
+            }
+          }
+          classesByPackage = Collections.unmodifiableMap(built);
+        }
+      }
+    }
+    return built;
+  }
+
+  private byte[] read(String name) {
+    try {
+      return classBytes.read(name.replace('.', '/') + CLASS_SUFFIX);
+    } catch (IOException ioe) {
+      return null;
+    }
+  }
+
+  private static String packageOf(String name) {
+    int lastDot = name.lastIndexOf('.');
+    return lastDot < 0 ? "" : name.substring(0, lastDot);
+  }
+
+  /**
+   * Classes defined by this tier, including those only loaded to link other shared classes.
+   * @return binary names in the order they were defined.
+   */
+  public List<String> getDefinedClassNames() {
+    synchronized (definedNames) {
+      return new ArrayList<>(definedNames);
+    }
+  }
+
+  /**
+   * Only classes this tier defines are counted, loaders finding a class here count a cache hit.
+   * @return the counters of this tier.
+   */
+  public ClassLoadingMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Stop defining classes, classes already defined remain usable by the loaders that linked them.
+   */
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+/**
+ * <p>
+ * Java agent enforcing the {@link EvictingStaticTransformer} rules on the classes of the application class loader, so
+ * each class is defined only once instead of again in an {@link EvictingClassLoader} per {@link RestrictiveClassloader}.
+ * There is no per annotation isolation in this mode, one set of delegation rules applies to the whole jvm.
+ * </p>
+ * <p>
+ * Usage: <code>-javaagent:AdviseStaticEvictingClassloader.jar[=supplier,supplier,warnOnly]</code> where each supplier is
+ * the class name of a delegating package supplier, as in {@link RestrictiveClassloader#delegatingPackagesSuppliers()},
+ * defaulting to {@link MinimalPackageSupplier}.  The optional warnOnly flag has the same meaning as
+ * {@link RestrictiveClassloader#warnOnly()}, it only applies in a developer's environment.
+ * </p>
+ * <p>
+ * Unlike an {@link EvictingClassLoader} the agent sees the classes of the test framework itself, so the packages of
+ * the test launchers and their logging, {@link #DEFAULT_EXCLUDED_PACKAGES}, are always left untouched.
+ * </p>
+ * <p>
+ * The jvm ignores exceptions thrown by a {@link ClassFileTransformer}, so an offending class is instead rewritten with a
+ * static initializer that throws the {@link ClassFormatError}.  Any use of the class fails, first with that error and
+ * afterwards with a {@link NoClassDefFoundError}, {@link #getError(String)} recovers the original reason.
+ * </p>
+ * @author rex
+ */
+public class StaticEvictionAgent implements ClassFileTransformer {
+
+  /**
+   * Agent argument enabling warn only mode.
+   */
+  public static final String WARN_ONLY = "warnOnly";
+
+  /**
+   * Packages loaded by the application class loader to launch and report on tests, delegated whatever the suppliers.
+   */
+  public static final String[] DEFAULT_EXCLUDED_PACKAGES =
+          new String[] {"org.apache.maven.surefire.", "org.apache.maven.plugin.surefire.", "org.slf4j.", "ch.qos.logback.",
+              "org.junit.", "org.opentest4j.", "org.apiguardian.", "junit.", "org.gradle.", "com.intellij.rt."};
+
+  /**
+   * Keeps the rewritten initializer's constant well within the class file limit of 65535 bytes.
+   */
+  private static final int MAX_MESSAGE_LENGTH = 16 * 1024;
+
+  private static final Map<String, String> classNameToError = new ConcurrentHashMap<>();
+
+  private final DelegationMatcher delegation;
+
+  private final EvictingStaticTransformer transformer;
+
+  public StaticEvictionAgent(DelegationMatcher delegation, EvictingStaticTransformer transformer) {
+    this.delegation = delegation;
+    this.transformer = transformer;
+  }
+
+  public static void premain(String agentArgs, Instrumentation instrumentation) throws ReflectiveOperationException {
+    instrumentation.addTransformer(fromArgs(agentArgs));
+  }
+
+  /**
+   * Attaching late only enforces the rules for classes loaded afterwards.
+   * @param agentArgs see the class documentation.
+   * @param instrumentation provided by the jvm.
+   * @throws ReflectiveOperationException if a supplier class can not be instantiated.
+   */
+  public static void agentmain(String agentArgs, Instrumentation instrumentation) throws ReflectiveOperationException {
+    premain(agentArgs, instrumentation);
+  }
+
+  /**
+   * Build the agent's transformer from its arguments.
+   * @param agentArgs comma separated delegating package supplier class names and the optional {@link #WARN_ONLY} flag.
+   * @return a transformer to register with {@link Instrumentation}.
+   * @throws ReflectiveOperationException if a supplier class can not be instantiated.
+   */
+  @SuppressWarnings("unchecked")
+  public static StaticEvictionAgent fromArgs(String agentArgs) throws ReflectiveOperationException {
+    List<String> prefixes = new ArrayList<>(Arrays.asList(DEFAULT_EXCLUDED_PACKAGES));
+    boolean warnOnly = false;
+    boolean supplied = false;
+    for (String arg : agentArgs == null ? new String[0] : agentArgs.split(",")) {
+      String trimmed = arg.trim();
+      if (WARN_ONLY.equals(trimmed)) {
+        warnOnly = true;
+      } else if (!trimmed.isEmpty()) {
+        ((Supplier<Stream<String>>) Class.forName(trimmed).getDeclaredConstructor().newInstance()).get()
+            .forEach(prefixes::add);
+        supplied = true;
+      }
+    }
+    if (!supplied) {
+      new MinimalPackageSupplier().get().forEach(prefixes::add);
+    }
+    return new StaticEvictionAgent(DelegationMatcher.of(prefixes),
+        new EvictingStaticTransformer(warnOnly && InDeveloperEnvironment.inDev()));
+  }
+
+  /**
+   * Reason a class was evicted by the agent.
+   * @param className the class we suspect was evicted.
+   * @return errorMessage of eviction, or null.
+   */
+  public static String getError(String className) {
+    return classNameToError.get(className);
+  }
+
+  /**
+   * Scan classes as they are first defined, skipping the boot and platform class loaders, {@link EvictingClassLoader}s
+   * (which scan for themselves) and delegated packages.
+   *
+   * @param loader the defining class loader.
+   * @param className the internal name of the class to verify.
+   * @param classBeingRedefined non null on redefinition or retransformation, which is ignored.
+   * @param protectionDomain ignored.
+   * @param classfileBuffer contains the bytes of a java class to be transformed.
+   * @return null, or the bytes of an evicted class whose static initializer throws a {@link ClassFormatError}.
+   */
+  @Override
+  public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+          ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+    if (className == null || classBeingRedefined != null || loader == null
+        || loader == ClassLoader.getPlatformClassLoader() || loader instanceof EvictingClassLoader) {
+      return null;
+    }
+    String name = className.replace('/', '.');
+    if (delegation.delegates(name)) {
+      return null;
+    }
+    try {
+      return transformer.transform(loader, className, null, protectionDomain, classfileBuffer);
+    } catch (ClassFormatError error) {
+      String message = String.valueOf(error.getMessage());
+      classNameToError.put(name, message);
+      return evict(classfileBuffer, message);
+    }
+  }
+
+  /**
+   * Replace the class's static initializer with one that throws a {@link ClassFormatError}, other members are untouched.
+   * @param classfileBuffer the original class.
+   * @param message of the error thrown on initialization.
+   * @return the rewritten class.
+   */
+  static byte[] evict(byte[] classfileBuffer, String message) {
+    String truncated = message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+    ClassReader reader = new ClassReader(classfileBuffer);
+    ClassWriter writer = new ClassWriter(reader, 0);
+    reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        if ("<clinit>".equals(name)) {
+          return null;
+        }
+        return super.visitMethod(access, name, desc, signature, exceptions);
+      }
+
+      @Override
+      public void visitEnd() {
+        MethodVisitor clinit = super.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        clinit.visitTypeInsn(Opcodes.NEW, "java/lang/ClassFormatError");
+        clinit.visitInsn(Opcodes.DUP);
+        clinit.visitLdcInsn(truncated);
+        clinit.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/ClassFormatError", "<init>", "(Ljava/lang/String;)V", false);
+        clinit.visitInsn(Opcodes.ATHROW);
+        clinit.visitMaxs(3, 0);
+        clinit.visitEnd();
+        super.visitEnd();
+      }
+    }, 0);
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Scans every class on a classpath that an {@link EvictingClassLoader} would scan, rather than waiting for a test to
+ * load it, and reports the classes that would be evicted.
+ * </p>
+ * <p>
+ * Class files are listed once, in classpath order, then read and scanned in parallel on the common fork join pool.  If
+ * a {@link VerdictStore} is given every verdict is recorded in it, so the first test run after an audit starts warm.
+ * </p>
+ * <p>
+ * From the command line: <code>java -cp &lt;test classpath&gt; com.github.advisedtesting.classloader.StaticStateAudit
+ * [report.json|-] [delegating package supplier class ...]</code>.  The report is written as JSON, to standard out if no
+ * file is named, and the verdicts are stored if {@value VerdictStore#CACHE_DIR_PROPERTY} is set.  The process exits
+ * with status 1 if any violation is found.
+ * </p>
+ * @author rex
+ */
+public class StaticStateAudit {
+
+  private static final int CLASSES_PER_TASK = 64;
+
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final ClasspathClassBytesSource classBytes;
+
+  private final DelegationMatcher delegation;
+
+  private final VerdictStore verdictStore;
+
+  private final ClassContainsStaticInitialization asmScanner = new ClassContainsStaticInitialization();
+
+  /**
+   * Build an audit of a classpath.
+   * @param classpath jars and directories, in search order.
+   * @param delegation classes it delegates are not audited, just as they are not scanned by the loader.
+   * @param verdictStore records the verdict of every scanned class, may be null.
+   */
+  public StaticStateAudit(List<Path> classpath, DelegationMatcher delegation, VerdictStore verdictStore) {
+    this.classBytes = new ClasspathClassBytesSource(classpath, StaticStateAudit.class.getClassLoader());
+    this.delegation = delegation;
+    this.verdictStore = verdictStore;
+  }
+
+  /**
+   * Scan every audited class on the classpath.
+   * @return the violations found.
+   */
+  public Report run() {
+    List<String> classFiles = classBytes.indexedClassFileNames().stream()
+        .filter(file -> !file.startsWith("META-INF/") && !file.endsWith("module-info.class"))
+        .filter(file -> !delegation.delegates(toClassName(file)))
+        .sorted()
+        .collect(Collectors.toList());
+    Report report = new Report(classFiles.size());
+    ForkJoinPool.commonPool().invoke(new ScanTask(classFiles, 0, classFiles.size(), report));
+    return report;
+  }
+
+  private void scan(String classFile, Report report) {
+    String className = toClassName(classFile);
+    try {
+      byte[] bytes = classBytes.read(classFile);
+      List<String> errors = verdictStore == null ? asmScanner.apply(bytes) : verdictStore.scan(bytes, asmScanner);
+      if (!errors.isEmpty()) {
+        report.violations.put(className, errors);
+      }
+    } catch (IOException | RuntimeException ex) {
+      report.unreadable.put(className, String.valueOf(ex.getMessage()));
+    }
+  }
+
+  private static String toClassName(String classFile) {
+    return classFile.substring(0, classFile.length() - CLASS_SUFFIX.length()).replace('/', '.');
+  }
+
+  /**
+   * Audit java.class.path, see the class documentation.
+   * @param args optional report file name, or "-" for standard out, followed by optional delegating package supplier
+   *     class names, {@link MinimalPackageSupplier} is used if none are named.
+   * @throws IOException if the report can not be written.
+   * @throws ReflectiveOperationException if a supplier class can not be instantiated.
+   */
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws IOException, ReflectiveOperationException {
+    List<String> prefixes = new ArrayList<>();
+    if (args.length < 2) {
+      new MinimalPackageSupplier().get().forEach(prefixes::add);
+    }
+    for (String supplier : Arrays.asList(args).subList(Math.min(1, args.length), args.length)) {
+      ((Supplier<Stream<String>>) Class.forName(supplier).getDeclaredConstructor().newInstance()).get()
+          .forEach(prefixes::add);
+    }
+    StaticStateAudit audit = new StaticStateAudit(ClasspathClassBytesSource.expand(System.getProperty("java.class.path")),
+            DelegationMatcher.of(prefixes), VerdictStore.fromSystemProperties());
+    Report report = audit.run();
+    if (args.length == 0 || "-".equals(args[0])) {
+      Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+      report.writeJson(writer);
+      writer.flush();
+    } else {
+      try (Writer writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+        report.writeJson(writer);
+      }
+    }
+    if (!report.getViolations().isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Outcome of an audit, classes are reported in name order.
+   */
+  public static class Report {
+
+    private final int classesScanned;
+
+    private final Map<String, List<String>> violations = new ConcurrentSkipListMap<>();
+
+    private final Map<String, String> unreadable = new ConcurrentSkipListMap<>();
+
+    private Report(int classesScanned) {
+      this.classesScanned = classesScanned;
+    }
+
+    public int getClassesScanned() {
+      return classesScanned;
+    }
+
+    /**
+     * Classes that would be evicted.
+     * @return class name to the scanner's errors.
+     */
+    public Map<String, List<String>> getViolations() {
+      return Collections.unmodifiableMap(violations);
+    }
+
+    /**
+     * Class files that could not be read or parsed.
+     * @return class name to the reason.
+     */
+    public Map<String, String> getUnreadable() {
+      return Collections.unmodifiableMap(unreadable);
+    }
+
+    /**
+     * Write the report as a JSON object.
+     * @param out destination of the JSON.
+     * @throws IOException if the destination can not be written.
+     */
+    public void writeJson(Appendable out) throws IOException {
+      out.append("{\n  \"scannerVersion\": ").append(String.valueOf(ClassContainsStaticInitialization.SCANNER_VERSION))
+         .append(",\n  \"classesScanned\": ").append(String.valueOf(classesScanned))
+         .append(",\n  \"violations\": [");
+      String separator = "\n";
+      for (Map.Entry<String, List<String>> violation : violations.entrySet()) {
+        out.append(separator).append("    {\"className\": ").append(quote(violation.getKey())).append(", \"errors\": [");
+        out.append(violation.getValue().stream().map(Report::quote).collect(Collectors.joining(", "))).append("]}");
+        separator = ",\n";
+      }
+      out.append(violations.isEmpty() ? "]" : "\n  ]").append(",\n  \"unreadable\": [");
+      separator = "\n";
+      for (Map.Entry<String, String> failure : unreadable.entrySet()) {
+        out.append(separator).append("    {\"className\": ").append(quote(failure.getKey()))
+           .append(", \"reason\": ").append(quote(failure.getValue())).append('}');
+        separator = ",\n";
+      }
+      out.append(unreadable.isEmpty() ? "]" : "\n  ]").append("\n}\n");
+    }
+
+    static String quote(String value) {
+      StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char character = value.charAt(i);
+        if (character == '"' || character == '\\') {
+          quoted.append('\\').append(character);
+        } else if (character == '\n') {
+          quoted.append("\\n");
+        } else if (character < 0x20) {
+          quoted.append(String.format("\\u%04x", (int) character));
+        } else {
+          quoted.append(character);
+        }
+      }
+      return quoted.append('"').toString();
+    }
+  }
+
+  /**
+   * Splits the class files in half until a task holds at most {@link StaticStateAudit#CLASSES_PER_TASK}.
+   */
+  private class ScanTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> classFiles;
+
+    private final int from;
+
+    private final int to;
+
+    private final Report report;
+
+    private ScanTask(List<String> classFiles, int from, int to, Report report) {
+      this.classFiles = classFiles;
+      this.from = from;
+      this.to = to;
+      this.report = report;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= CLASSES_PER_TASK) {
+        for (int i = from; i < to; i++) {
+          scan(classFiles.get(i), report);
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new ScanTask(classFiles, from, middle, report), new ScanTask(classFiles, middle, to, report));
+      }
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * On disk store of {@link ClassContainsStaticInitialization} verdicts, keyed by a SHA-256 hash of the class bytes.
+ * A class that has not been recompiled since the last run is not parsed again, and a class that has been recompiled
+ * hashes to a new key, so stale verdicts are never consulted.
+ * </p>
+ * <p>
+ * Verdicts are appended to a single log file per {@link ClassContainsStaticInitialization#SCANNER_VERSION}, which is read
+ * once when the store is opened.  Appends are guarded by a {@link FileLock} so that parallel forks may share a directory.
+ * A writer that died mid append leaves a line that is not newline terminated, the next append closes it with a NUL,
+ * and lines holding a NUL or without a well formed key are ignored.
+ * </p>
+ * <p>
+ * The store is enabled by setting the system property {@value #CACHE_DIR_PROPERTY} to a writable directory.
+ * </p>
+ * @author rex
+ */
+public class VerdictStore {
+
+  public static final String CACHE_DIR_PROPERTY = "advisedtesting.classloader.cacheDir";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VerdictStore.class);
+
+  private static final Map<Path, VerdictStore> STORES_BY_DIRECTORY = new ConcurrentHashMap<>();
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final int KEY_LENGTH = 64;
+
+  private static final byte TORN = 0;
+
+  private static final byte[] CLOSE_TORN_LINE = {TORN, '\n'};
+
+  private final Path log;
+
+  private final Map<String, List<String>> verdicts = new ConcurrentHashMap<>();
+
+  private FileChannel channel;
+
+  /**
+   * Reads any verdicts already present in the directory.
+   * @param directory the directory holding the verdict log, created if absent.
+   * @throws IOException if the directory or log can not be read.
+   */
+  public VerdictStore(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    this.log = directory.resolve("verdicts-v" + ClassContainsStaticInitialization.SCANNER_VERSION + ".log");
+    if (Files.exists(log)) {
+      read(Files.readAllBytes(log));
+    }
+  }
+
+  /**
+   * Shared store for the directory named by {@value #CACHE_DIR_PROPERTY}.
+   * @return the store, or null if the property is not set or the directory is unusable.
+   */
+  public static VerdictStore fromSystemProperties() {
+    String directory = System.getProperty(CACHE_DIR_PROPERTY);
+    if (directory == null || directory.isEmpty()) {
+      return null;
+    }
+    return open(Paths.get(directory));
+  }
+
+  /**
+   * Shared store for a directory, one instance per directory per jvm.
+   * @param directory the directory holding the verdict log.
+   * @return the store, or null if the directory is unusable.
+   */
+  public static VerdictStore open(Path directory) {
+    return STORES_BY_DIRECTORY.computeIfAbsent(directory.toAbsolutePath().normalize(), dir -> {
+      try {
+        return new VerdictStore(dir);
+      } catch (IOException ioe) {
+        LOGGER.warn("Verdict cache disabled, directory not usable " + dir, ioe);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Hex encoded SHA-256 hash of a class file.
+   * @param bytes the bytes of a class file.
+   * @return the key the verdict of those bytes is stored under.
+   */
+  public static String keyOf(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      char[] out = new char[digest.length * 2];
+      for (int i = 0; i < digest.length; i++) {
+        out[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+        out[i * 2 + 1] = HEX[digest[i] & 0xF];
+      }
+      return new String(out);
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException("SHA-256 is required of every jvm", nsae);
+    }
+  }
+
+  /**
+   * Recorded verdict for a class file.
+   * @param key from {@link #keyOf(byte[])}.
+   * @return the errors found by the scanner, empty if the class was clean, or null if the class has not been scanned.
+   */
+  public List<String> get(String key) {
+    return verdicts.get(key);
+  }
+
+  /**
+   * Recorded verdict for a class file, scanned and recorded if there is none.  Every cached scan goes through here, so
+   * verdicts are always stored under the key and {@link ClassContainsStaticInitialization#SCANNER_VERSION} they are
+   * looked up by.
+   * @param bytes the bytes of a class file.
+   * @param scanner scans classes that have not been scanned.
+   * @return the errors found by the scanner, empty if the class was clean.
+   * @throws IllegalArgumentException if the scanner is fail fast, its partial verdicts can not serve warn only loaders.
+   */
+  public List<String> scan(byte[] bytes, ClassContainsStaticInitialization scanner) {
+    if (scanner.isFailFast()) {
+      throw new IllegalArgumentException("Recorded verdicts must list every violation, the scanner stops at the first");
+    }
+    String key = keyOf(bytes);
+    List<String> errors = get(key);
+    if (errors == null) {
+      errors = scanner.apply(bytes);
+      put(key, errors);
+    }
+    return errors;
+  }
+
+  /**
+   * Records a verdict in memory and appends it to the log.  Failure to write is logged, not thrown.
+   * @param key from {@link #keyOf(byte[])}.
+   * @param errors the errors found by the scanner, empty if the class was clean.
+   */
+  public void put(String key, List<String> errors) {
+    if (verdicts.putIfAbsent(key, Collections.unmodifiableList(new ArrayList<>(errors))) != null) {
+      return;
+    }
+    StringBuilder line = new StringBuilder(key);
+    for (String error : errors) {
+      line.append('\t').append(error.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ')
+          .replace((char) TORN, ' '));
+    }
+    line.append('\n');
+    append(line.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private synchronized void append(byte[] line) {
+    try {
+      if (channel == null) {
+        channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      }
+      try (FileLock lock = channel.lock()) {
+        if (!endsWithNewline()) {
+          write(CLOSE_TORN_LINE);
+        }
+        write(line);
+      }
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not record verdict in " + log, ioe);
+    }
+  }
+
+  /**
+   * Whether the log is empty or its last line is complete, read under the lock as any process may have torn it.
+   */
+  private boolean endsWithNewline() throws IOException {
+    long size = channel.size();
+    if (size == 0) {
+      return true;
+    }
+    ByteBuffer last = ByteBuffer.allocate(1);
+    return channel.read(last, size - 1) == 1 && last.get(0) == '\n';
+  }
+
+  /**
+   * Writes at the end of the log, which only the holder of the lock may extend.
+   */
+  private void write(byte[] bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    long position = channel.size();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private void read(byte[] contents) {
+    int start = 0;
+    boolean torn = false;
+    for (int i = 0; i < contents.length; i++) {
+      if (contents[i] == TORN) {
+        torn = true;
+      } else if (contents[i] == '\n') {
+        String[] parts = new String(contents, start, i - start, StandardCharsets.UTF_8).split("\t");
+        if (!torn && isKey(parts[0])) {
+          verdicts.putIfAbsent(parts[0], Collections.unmodifiableList(Arrays.asList(parts).subList(1, parts.length)));
+        }
+        start = i + 1;
+        torn = false;
+      }
+    }
+  }
+
+  private static boolean isKey(String field) {
+    if (field.length() != KEY_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < KEY_LENGTH; i++) {
+      char character = field.charAt(i);
+      if ((character < '0' || character > '9') && (character < 'a' || character > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.classloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Collects the static state found by warn only {@link EvictingStaticTransformer}s, so that a class loaded by many class
+ * loaders is reported once, and nothing is printed while classes are loading.
+ * </p>
+ * <p>
+ * When closed a summary is printed, one line per class, and if {@value #REPORT_PROPERTY} names a file every violation
+ * is written to it as json, its violations laid out as in the {@link StaticStateAudit} report with their load counts:
+ * <code>{"violations": [{"className": "a.B", "loads": 2, "errors": ["..."]}]}</code>.  Without a report file the
+ * violations are printed with the summary instead.
+ * </p>
+ * @author rex
+ */
+public class ViolationReporter implements Closeable {
+
+  /**
+   * System property naming the json report file, replaced when the reporter is closed.
+   */
+  public static final String REPORT_PROPERTY = "advisedtesting.classloader.violationReport";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ViolationReporter.class);
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final Path reportFile;
+
+  private final PrintStream console;
+
+  private final Map<String, Violation> violations = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  /**
+   * Reporter printing to a console, and optionally writing a report file.
+   * @param reportFile written when closed, may be null.
+   * @param console receives the summary.
+   */
+  public ViolationReporter(Path reportFile, PrintStream console) {
+    this.reportFile = reportFile;
+    this.console = console;
+  }
+
+  /**
+   * Reporter printing to {@link System#err}, and writing the file named by {@value #REPORT_PROPERTY} if it is set.
+   * @return a new reporter.
+   */
+  public static ViolationReporter fromSystemProperties() {
+    String report = System.getProperty(REPORT_PROPERTY);
+    return new ViolationReporter(report == null || report.isEmpty() ? null : Paths.get(report), System.err);
+  }
+
+  /**
+   * Record that a class with static state was loaded, safe to call from any number of loading threads.
+   * @param className binary name of the class.
+   * @param errors the violations found in the class, only those of the first report of a class are kept.
+   */
+  public void report(String className, List<String> errors) {
+    Violation violation = violations.get(className);
+    if (violation == null) {
+      Violation added = new Violation(new ArrayList<>(errors));
+      violation = violations.putIfAbsent(className, added);
+      if (violation == null) {
+        violation = added;
+      }
+    }
+    violation.loads.increment();
+  }
+
+  /**
+   * Record another load of a class whose verdict was reused rather than scanned again, ignored unless the class was
+   * reported.
+   * @param className binary name of the class.
+   */
+  public void reloaded(String className) {
+    Violation violation = violations.get(className);
+    if (violation != null) {
+      violation.loads.increment();
+    }
+  }
+
+  /**
+   * Print the summary and write the report file, once.  Failure to write is logged, not thrown.
+   */
+  @Override
+  public void close() {
+    if (closed.getAndSet(true) || violations.isEmpty()) {
+      return;
+    }
+    Map<String, Violation> sorted = new TreeMap<>(violations);
+    StringBuilder summary = new StringBuilder(INITIAL_CAPACITY);
+    summary.append("Static state found in ").append(sorted.size())
+        .append(" classes, in non-dev mode these will result in ClassFormatErrors\n");
+    for (Map.Entry<String, Violation> entry : sorted.entrySet()) {
+      Violation violation = entry.getValue();
+      summary.append(entry.getKey()).append(" : ").append(violation.errors.size()).append(" violations, loaded ")
+          .append(violation.loads.sum()).append(" times\n");
+      if (reportFile == null) {
+        int count = 0;
+        for (String error : violation.errors) {
+          summary.append("  Error ").append(++count).append(" : ").append(error).append('\n');
+        }
+      }
+    }
+    if (reportFile != null && write(sorted)) {
+      summary.append("Violations written to ").append(reportFile).append('\n');
+    }
+    console.print(summary);
+    console.flush();
+  }
+
+  private boolean write(Map<String, Violation> sorted) {
+    StringBuilder json = new StringBuilder(INITIAL_CAPACITY).append("{\n  \"violations\": [");
+    String separator = "\n";
+    for (Map.Entry<String, Violation> entry : sorted.entrySet()) {
+      json.append(separator).append("    {\"className\": ").append(StaticStateAudit.Report.quote(entry.getKey()))
+          .append(", \"loads\": ").append(entry.getValue().loads.sum()).append(", \"errors\": [")
+          .append(entry.getValue().errors.stream().map(StaticStateAudit.Report::quote).collect(Collectors.joining(", ")))
+          .append("]}");
+      separator = ",\n";
+    }
+    json.append("\n  ]\n}\n");
+    try {
+      Path directory = reportFile.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      Path written = Files.createTempFile(directory, reportFile.getFileName().toString(), ".tmp");
+      Files.write(written, json.toString().getBytes(StandardCharsets.UTF_8));
+      Files.move(written, reportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException ioe) {
+      LOGGER.warn("Could not write static state violations " + reportFile, ioe);
+      return false;
+    }
+  }
+
+  private static final class Violation {
+
+    private final List<String> errors;
+
+    private final LongAdder loads = new LongAdder();
+
+    private Violation(List<String> errors) {
+      this.errors = errors;
+    }
+  }
+}
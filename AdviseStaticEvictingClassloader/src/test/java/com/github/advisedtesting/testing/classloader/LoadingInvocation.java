@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+import com.github.advisedtesting.core.ContextAwareMethodInvocation;
+import com.github.advisedtesting.core.ObjectFactory;
+
+/**
+ * Stands in for a test run by the {@link com.github.advisedtesting.classloader.RunInClassLoaderInterceptor}, initializing
+ * classes through the context class loader, then optionally calling a method of one of them, or failing.
+ */
+class LoadingInvocation implements ContextAwareMethodInvocation {
+
+  private final Method method;
+
+  private final String[] classNames;
+
+  private String callClass;
+
+  private String callMethod;
+
+  private Throwable failure;
+
+  /**
+   * An invocation of a method annotated with {@link RestrictiveClassloader}.
+   * @param method supplies the annotation, and identifies the test.
+   * @param classNames binary names of classes to initialize.
+   */
+  LoadingInvocation(Method method, String... classNames) {
+    this.method = method;
+    this.classNames = classNames;
+  }
+
+  /**
+   * Also call a method of a new instance of a class, proceeding to the method's result.
+   * @param className binary name of a class with a public no argument constructor.
+   * @param methodName a public no argument method of the class.
+   * @return this invocation.
+   */
+  LoadingInvocation calling(String className, String methodName) {
+    this.callClass = className;
+    this.callMethod = methodName;
+    return this;
+  }
+
+  LoadingInvocation failingWith(Throwable thrown) {
+    this.failure = thrown;
+    return this;
+  }
+
+  @Override
+  public Object proceed() throws Throwable {
+    for (String className : classNames) {
+      Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    if (callClass != null) {
+      Class<?> type = Class.forName(callClass, true, Thread.currentThread().getContextClassLoader());
+      return type.getMethod(callMethod).invoke(type.getConstructor().newInstance());
+    }
+    return null;
+  }
+
+  @Override
+  public Method getMethod() {
+    return method;
+  }
+
+  @Override
+  public Object[] getArguments() {
+    return new Object[0];
+  }
+
+  @Override
+  public Object getThis() {
+    return null;
+  }
+
+  @Override
+  public AccessibleObject getStaticPart() {
+    return method;
+  }
+
+  @Override
+  public void registerObjectFactory(ObjectFactory factory) {
+    //no context is needed to initialize classes.
+  }
+
+  @Override
+  public ObjectFactory getCurrentContextFactory() {
+    return null;
+  }
+
+  @Override
+  public Annotation getTargetAnnotation() {
+    return method.getAnnotation(RestrictiveClassloader.class);
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import com.github.advisedtesting.classloader.StaticEvictionAgent;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+/**
+ * Run by surefire in the integration-test phase with the packaged jar as a java agent, this class is itself subject to
+ * the agent's rules, hence no static state.
+ */
+public class StaticEvictionAgentIT {
+
+  @Test
+  public void evictsStaticStateOfApplicationClasses() {
+    assertThatThrownBy(() -> Class.forName(StaticInitBlockClass.class.getName(), true, getClass().getClassLoader()))
+        .isInstanceOf(ClassFormatError.class)
+        .hasMessageContaining(StaticInitBlockClass.class.getName());
+    assertThat(StaticEvictionAgent.getError(StaticInitBlockClass.class.getName())).isNotNull();
+  }
+
+  @Test
+  public void cleanClassesInitialize() throws ClassNotFoundException {
+    assertThat(Class.forName(ContainsStaticFinalLiteral.class.getName(), true, getClass().getClassLoader())).isNotNull();
+    assertThat(StaticEvictionAgent.getError(ContainsStaticFinalLiteral.class.getName())).isNull();
+  }
+
+  @Test
+  public void testFrameworkAndLoggingAreLeftAlone() {
+    LoggerFactory.getLogger(getClass()).info("Logging under the static eviction agent");
+    assertThat(StaticEvictionAgent.getError("org.apache.maven.surefire.booter.ForkedBooter")).isNull();
+    assertThat(StaticEvictionAgent.getError("ch.qos.logback.classic.LoggerContext")).isNull();
+    assertThat(StaticEvictionAgent.getError("org.slf4j.LoggerFactory")).isNull();
+  }
+}
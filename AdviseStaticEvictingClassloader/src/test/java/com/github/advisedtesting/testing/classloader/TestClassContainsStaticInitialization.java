@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassContainsStaticInitialization;
+import com.github.advisedtesting.classloader.ClassContainsStaticInitialization.Verdict;
+
+import test.classloader.data.ContainsAssertion;
+import test.classloader.data.ContainsEnumerationSwitchStatement;
+import test.classloader.data.ContainsImmutableStaticFinals;
+import test.classloader.data.ContainsMutableStaticFinal;
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.ContainsStaticFinalNonLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+import test.classloader.data.ContainsStaticUnsetVar;
+import test.classloader.data.NestedContainsStaticNonFinalOrNonLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+public class TestClassContainsStaticInitialization {
+
+  @Test
+  public void failFastStopsAtTheFirstViolation() {
+    String className = ContainsStaticLiteralNonFinal.class.getName();
+    assertThat(new ClassContainsStaticInitialization().apply(className)).hasSize(2);
+    assertThat(new ClassContainsStaticInitialization(true).apply(className))
+          .containsExactly("Disallowed static field with name \"o\" on class: " + className);
+  }
+
+  @Test
+  public void failFastAgreesOnTheVerdict() {
+    ClassContainsStaticInitialization full = new ClassContainsStaticInitialization();
+    ClassContainsStaticInitialization lean = new ClassContainsStaticInitialization(true);
+    for (Class<?> clazz : new Class<?>[] {ContainsAssertion.class, StaticInitBlockClass.class, 
+        ContainsStaticLiteralNonFinal.class, TestClassContainsStaticInitialization.class}) {
+      assertThat(lean.apply(clazz.getName()).isEmpty()).as(clazz.getName()).isEqualTo(full.apply(clazz.getName()).isEmpty());
+    }
+  }
+
+  @Test
+  public void preFilteredBytesMatchAFullScan() throws IOException {
+    ClassContainsStaticInitialization scanner = new ClassContainsStaticInitialization();
+    for (Class<?> clazz : new Class<?>[] {ContainsAssertion.class, ContainsEnumerationSwitchStatement.class,
+        ContainsStaticFinalLiteral.class, ContainsStaticFinalNonLiteral.class, ContainsStaticLiteralNonFinal.class,
+        ContainsStaticUnsetVar.class, NestedContainsStaticNonFinalOrNonLiteral.class,
+        NestedContainsStaticNonFinalOrNonLiteral.Nested.class, StaticInitBlockClass.class, String.class}) {
+      assertThat(scanner.apply(bytesOf(clazz))).as(clazz.getName()).isEqualTo(scanner.apply(clazz.getName()));
+    }
+    assertThat(scanner.apply(bytesOf(ContainsStaticFinalLiteral.class))).isEmpty();
+  }
+
+  @Test
+  public void truncatedBytesAreRejected() throws IOException {
+    byte[] bytes = bytesOf(ContainsStaticFinalLiteral.class);
+    byte[] truncated = new byte[bytes.length / 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    assertThatThrownBy(() -> new ClassContainsStaticInitialization().apply(truncated)).isInstanceOf(RuntimeException.class);
+  }
+
+  @Test
+  public void immutableStaticFinalsAreAllowed() {
+    for (boolean failFast : new boolean[] {false, true}) {
+      ClassContainsStaticInitialization scanner = new ClassContainsStaticInitialization(failFast);
+      assertThat(scanner.apply(ContainsImmutableStaticFinals.class.getName())).isEmpty();
+      assertThat(scanner.apply(ContainsMutableStaticFinal.class.getName())).isNotEmpty();
+    }
+    Verdict mutable = new ClassContainsStaticInitialization().apply(ContainsMutableStaticFinal.class.getName());
+    assertThat(mutable.getFieldNames()).containsExactly("NAMES");
+    assertThat(mutable.getKinds()).isEqualTo(Verdict.STATIC_FIELD | Verdict.STATIC_INIT);
+  }
+
+  @Test
+  public void verdictsRecordKindsAndFieldNames() {
+    Verdict verdict = new ClassContainsStaticInitialization().apply(ContainsStaticLiteralNonFinal.class.getName());
+    assertThat(verdict.getKinds()).isEqualTo(Verdict.STATIC_FIELD | Verdict.STATIC_INIT);
+    assertThat(verdict.getFieldNames()).containsExactly("o");
+    assertThat(new ClassContainsStaticInitialization().apply(StaticInitBlockClass.class.getName()).getKinds())
+        .isEqualTo(Verdict.STATIC_INIT);
+    assertThat(new ClassContainsStaticInitialization().apply(ContainsAssertion.class.getName())).isSameAs(Verdict.CLEAN);
+  }
+
+  @Test
+  public void scannersAreSafeToShareBetweenThreads() throws Exception {
+    final List<byte[]> classes = new ArrayList<>();
+    for (Class<?> clazz : new Class<?>[] {ContainsAssertion.class, ContainsEnumerationSwitchStatement.class,
+        ContainsStaticFinalNonLiteral.class, ContainsStaticLiteralNonFinal.class, ContainsStaticUnsetVar.class,
+        NestedContainsStaticNonFinalOrNonLiteral.class, StaticInitBlockClass.class, String.class}) {
+      classes.add(bytesOf(clazz));
+    }
+    final int threads = 8;
+    for (boolean failFast : new boolean[] {false, true}) {
+      final List<List<String>> expected = new ArrayList<>();
+      for (byte[] bytes : classes) {
+        expected.add(new ArrayList<>(new ClassContainsStaticInitialization(failFast).apply(bytes)));
+      }
+      ClassContainsStaticInitialization shared = new ClassContainsStaticInitialization(failFast);
+      CountDownLatch start = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        List<Future<Integer>> scanned = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+          final int offset = thread;
+          Callable<Integer> scanner = () -> {
+            start.await();
+            for (int i = 0; i < 500; i++) {
+              int index = (i + offset) % classes.size();
+              assertThat(shared.apply(classes.get(index))).isEqualTo(expected.get(index));
+            }
+            return offset;
+          };
+          scanned.add(executor.submit(scanner));
+        }
+        start.countDown();
+        for (Future<Integer> future : scanned) {
+          future.get(1, TimeUnit.MINUTES);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private byte[] bytesOf(Class<?> clazz) throws IOException {
+    String resourceName = clazz.getName().replace('.', '/') + ".class";
+    try (InputStream in = ClassLoader.getSystemResourceAsStream(resourceName)) {
+      return in.readAllBytes();
+    }
+  }
+}
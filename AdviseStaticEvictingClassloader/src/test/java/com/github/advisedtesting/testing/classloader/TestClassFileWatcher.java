@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.advisedtesting.classloader.ClassFileWatcher;
+import com.github.advisedtesting.classloader.ClasspathClassBytesSource;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+
+public class TestClassFileWatcher {
+
+  private static final String RESOURCE_NAME = ContainsStaticFinalLiteral.class.getName().replace('.', '/') + ".class";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] classFile() throws IOException {
+    try (InputStream in = ClassLoader.getSystemResourceAsStream(RESOURCE_NAME)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static Predicate<String> next(BlockingQueue<Predicate<String>> changes) throws InterruptedException {
+    Predicate<String> changed = changes.poll(10, TimeUnit.SECONDS);
+    assertThat(changed).describedAs("no change reported").isNotNull();
+    return changed;
+  }
+
+  @Test
+  public void changedAndCreatedClassesAreReported() throws IOException, InterruptedException {
+    Path root = folder.newFolder().toPath();
+    Path existing = root.resolve(RESOURCE_NAME);
+    Files.createDirectories(existing.getParent());
+    Files.write(existing, classFile());
+    ClasspathClassBytesSource source = new ClasspathClassBytesSource(Collections.singletonList(root),
+        ClassLoader.getSystemClassLoader());
+    assertThat(source.indexedClassCount()).isEqualTo(1);
+    BlockingQueue<Predicate<String>> changes = new LinkedBlockingQueue<>();
+
+    try (ClassFileWatcher watcher = new ClassFileWatcher(source, changes::add)) {
+      Files.write(existing, classFile());
+      Predicate<String> modified = next(changes);
+      assertThat(modified.test(ContainsStaticFinalLiteral.class.getName())).isTrue();
+      assertThat(modified.test("other.Created")).isFalse();
+
+      Path created = root.resolve("other/Created.class");
+      Files.createDirectories(created.getParent());
+      Files.write(created, classFile());
+      Predicate<String> added = next(changes);
+      while (!added.test("other.Created")) {
+        added = next(changes);
+      }
+      assertThat(source.indexedClassFileNames()).contains("other/Created.class");
+    }
+  }
+
+  @Test
+  public void anyChangedFileIsReportedAsAResourceChange() throws IOException, InterruptedException {
+    Path root = folder.newFolder().toPath();
+    ClasspathClassBytesSource source = new ClasspathClassBytesSource(Collections.singletonList(root),
+        ClassLoader.getSystemClassLoader());
+    BlockingQueue<Boolean> resourceChanges = new LinkedBlockingQueue<>();
+    ClassFileWatcher.Listener listener = new ClassFileWatcher.Listener() {
+
+      @Override
+      public void classesChanged(Predicate<String> changed) {
+        //only resources are expected.
+      }
+
+      @Override
+      public void resourcesChanged() {
+        resourceChanges.add(Boolean.TRUE);
+      }
+    };
+
+    try (ClassFileWatcher watcher = new ClassFileWatcher(source, listener)) {
+      Files.write(root.resolve("application.properties"), "name=value".getBytes(StandardCharsets.UTF_8));
+      assertThat(resourceChanges.poll(10, TimeUnit.SECONDS)).describedAs("no change reported").isTrue();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.advisedtesting.classloader.ClassFootprints;
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+
+import test.classloader.data.ContainsAssertion;
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+public class TestClassFootprints {
+
+  private static final String CONFIGURATION = "configuration";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void footprintsSurviveReopeningInTestOrder() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    ClassFootprints footprints = new ClassFootprints(directory);
+    footprints.record(CONFIGURATION, "first", Arrays.asList("b.B", "a.A"));
+    footprints.record(CONFIGURATION, "second", Arrays.asList("a.A", "c.C"));
+    footprints.record("other", "first", Collections.singletonList("d.D"));
+    footprints.close();
+
+    ClassFootprints reopened = new ClassFootprints(directory);
+    assertThat(reopened.recorded(CONFIGURATION)).containsExactly("b.B", "a.A", "c.C");
+    reopened.record(CONFIGURATION, "second", Collections.singletonList("e.E"));
+    reopened.close();
+    assertThat(new ClassFootprints(directory).recorded(CONFIGURATION)).containsExactly("b.B", "a.A", "c.C", "e.E");
+    assertThat(new ClassFootprints(directory).recorded("unrecorded")).isEmpty();
+  }
+
+  @Test
+  public void preloadedClassesAreDefinedNotInitialized() {
+    EvictingClassLoader loader = new EvictingClassLoader(new MinimalPackageSupplier().get().collect(Collectors.toList()),
+        new EvictingStaticTransformer(false, null), this.getClass().getClassLoader(), new ClassVerdictCache());
+    int mark = loader.getLoadedClassCount();
+    loader.preload(Arrays.asList(ContainsStaticFinalLiteral.class.getName(), "missing.Missing",
+        StaticInitBlockClass.class.getName(), ContainsAssertion.class.getName()));
+    assertThat(loader.getLoadedClassNames(mark)).containsExactly(ContainsStaticFinalLiteral.class.getName(),
+        ContainsAssertion.class.getName());
+    assertThat(loader.getError(StaticInitBlockClass.class.getName())).isNotNull();
+  }
+}
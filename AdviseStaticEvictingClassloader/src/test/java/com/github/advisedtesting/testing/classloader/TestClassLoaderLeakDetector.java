@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassLoaderLeakDetector;
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+
+public class TestClassLoaderLeakDetector {
+
+  private final ClassLoaderLeakDetector detector = new ClassLoaderLeakDetector();
+
+  private EvictingClassLoader newTrackedLoader(String scope) throws ClassNotFoundException {
+    EvictingClassLoader loader = new EvictingClassLoader(new ArrayList<>(), new EvictingStaticTransformer(false, null),
+        this.getClass().getClassLoader(), new ClassVerdictCache());
+    loader.loadClass(ContainsStaticFinalLiteral.class.getName());
+    detector.track(loader, scope);
+    return loader;
+  }
+
+  @Test
+  public void unreferencedLoadersAreCollected() throws Exception {
+    detector.released(newTrackedLoader("released"));
+    newTrackedLoader("closed").close();
+    assertThat(detector.awaitCollection(10_000)).isEmpty();
+    assertThat(detector.liveCount()).isZero();
+  }
+
+  @Test
+  public void loadersInScopeAreNotReported() throws Exception {
+    EvictingClassLoader loader = newTrackedLoader("in use");
+    assertThat(detector.report()).isEmpty();
+    assertThat(detector.liveCount()).isEqualTo(1);
+    loader.close();
+    assertThat(detector.report()).hasSize(1);
+  }
+
+  @Test
+  public void retainingThreadsAreReported() throws Exception {
+    EvictingClassLoader loader = newTrackedLoader("leaky");
+    CountDownLatch done = new CountDownLatch(1);
+    Thread retainer = new Thread(() -> {
+      try {
+        done.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }, "leaky-retainer");
+    retainer.setContextClassLoader(loader);
+    retainer.start();
+    try {
+      detector.released(loader);
+      loader = null;
+      List<ClassLoaderLeakDetector.Leak> leaks = detector.awaitCollection(200);
+      assertThat(leaks).hasSize(1);
+      assertThat(leaks.get(0).getScope()).isEqualTo("leaky");
+      assertThat(leaks.get(0).getClassesDefined()).isEqualTo(1);
+      assertThat(leaks.get(0).getDefinedBytes()).isPositive();
+      assertThat(leaks.get(0).getRetainers()).containsExactly("context class loader of thread \"leaky-retainer\"");
+    } finally {
+      done.countDown();
+      retainer.join();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassLoaderPolicy;
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+
+public class TestClassLoaderPolicy {
+
+  private static ClassLoaderPolicy policyOf(String methodName) throws NoSuchMethodException {
+    return ClassLoaderPolicy.of(Annotated.class.getDeclaredMethod(methodName).getAnnotation(RestrictiveClassloader.class));
+  }
+
+  @Test
+  public void schedulingSettingsDoNotChangeThePolicy() throws NoSuchMethodException {
+    final ClassLoaderPolicy plain = policyOf("plain");
+    assertThat(policyOf("pooled")).isEqualTo(plain).hasSameHashCodeAs(plain);
+    assertThat(policyOf("pooled").toString()).isEqualTo(plain.toString());
+    assertThat(policyOf("repeatedSupplier")).isEqualTo(plain);
+    assertThat(policyOf("pooled").getDelegation()).isSameAs(plain.getDelegation());
+  }
+
+  @Test
+  public void delegationAndTransformationChangeThePolicy() throws NoSuchMethodException {
+    final ClassLoaderPolicy plain = policyOf("plain");
+    assertThat(policyOf("widerDelegation")).isNotEqualTo(plain);
+    assertThat(policyOf("widerDelegation").toString()).isNotEqualTo(plain.toString()).contains("test.classloader.data");
+    assertThat(policyOf("resetting")).isNotEqualTo(plain);
+    assertThat(policyOf("resetting").isWarnOnly()).isFalse();
+  }
+
+  @SuppressWarnings("unused")
+  private static class Annotated {
+
+    @RestrictiveClassloader
+    void plain() {
+    }
+
+    @RestrictiveClassloader(isolatePerTest = true, poolSize = 4, warmClasses = "java.lang.String")
+    void pooled() {
+    }
+
+    @RestrictiveClassloader(delegatingPackagesSuppliers = { MinimalPackageSupplier.class, MinimalPackageSupplier.class })
+    void repeatedSupplier() {
+    }
+
+    @RestrictiveClassloader(delegatingPackagesSuppliers = TestPackageSupplier.class)
+    void widerDelegation() {
+    }
+
+    @RestrictiveClassloader(resetStaticState = true, warnOnly = true)
+    void resetting() {
+    }
+  }
+}
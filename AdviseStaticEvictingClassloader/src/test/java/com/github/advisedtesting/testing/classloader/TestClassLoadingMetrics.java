@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Set;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassLoadingMetrics;
+import com.github.advisedtesting.classloader.ClassLoadingMetricsMXBean;
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+import com.github.advisedtesting.classloader.RunInClassLoaderInterceptor;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+public class TestClassLoadingMetrics {
+
+  @Test
+  public void loaderCountsDefinitionsEvictionsAndCacheHits() throws ClassNotFoundException {
+    ClassVerdictCache verdicts = new ClassVerdictCache();
+    EvictingClassLoader first = newLoader(verdicts);
+    first.loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThatThrownBy(() -> first.loadClass(StaticInitBlockClass.class.getName())).isInstanceOf(ClassFormatError.class);
+
+    ClassLoadingMetrics.Snapshot snapshot = first.getMetrics().snapshot();
+    assertThat(snapshot.getClassLoaders()).isEqualTo(1);
+    assertThat(snapshot.getClassesDefined()).isEqualTo(1);
+    assertThat(snapshot.getEvictions()).isEqualTo(1);
+    assertThat(snapshot.getCacheHits()).isZero();
+    assertThat(snapshot.getBytesRead()).isPositive();
+    assertThat(snapshot.getDefineNanos()).isPositive();
+
+    EvictingClassLoader second = newLoader(verdicts);
+    second.loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThatThrownBy(() -> second.loadClass(StaticInitBlockClass.class.getName())).isInstanceOf(ClassFormatError.class);
+    ClassLoadingMetrics.Snapshot cached = second.getMetrics().snapshot();
+    assertThat(cached.getCacheHits()).isEqualTo(2);
+    assertThat(cached.getScanNanos()).isZero();
+
+    ClassLoadingMetrics.Snapshot total = snapshot.plus(cached);
+    assertThat(total.getClassLoaders()).isEqualTo(2);
+    assertThat(total.getClassesDefined()).isEqualTo(2);
+    assertThat(total.getEvictions()).isEqualTo(2);
+  }
+
+  @Test
+  public void interceptorRegistersAnMBeanUntilClosed() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName pattern = new ObjectName(RunInClassLoaderInterceptor.OBJECT_NAME + ",*");
+    Set<ObjectName> before = server.queryNames(pattern, null);
+    RunInClassLoaderInterceptor interceptor = new RunInClassLoaderInterceptor();
+    assertThat(interceptor.getTotals().getClassesDefined()).isZero();
+    Set<ObjectName> after = server.queryNames(pattern, null);
+    after.removeAll(before);
+    assertThat(after).hasSize(1);
+
+    ClassLoadingMetricsMXBean proxy = JMX.newMXBeanProxy(server, after.iterator().next(), ClassLoadingMetricsMXBean.class);
+    assertThat(proxy.getTotals().getClassLoaders()).isZero();
+
+    interceptor.close();
+    assertThat(server.queryNames(pattern, null)).isEqualTo(before);
+  }
+
+  @Test
+  public void closedLoadersAreFoldedIntoTheTotals() throws Throwable {
+    Method method = Isolated.class.getMethod("isolated");
+    try (RunInClassLoaderInterceptor interceptor = new RunInClassLoaderInterceptor()) {
+      for (int i = 0; i < 3; i++) {
+        interceptor.invoke(new LoadingInvocation(method, ContainsStaticFinalLiteral.class.getName()));
+      }
+      ClassLoadingMetrics.Snapshot totals = interceptor.getTotals();
+      assertThat(totals.getClassLoaders()).isGreaterThanOrEqualTo(3);
+      assertThat(totals.getClassesDefined()).isGreaterThanOrEqualTo(3);
+      assertThat(interceptor.getLeakDetector().awaitCollection(10_000))
+          .describedAs("Counters of closed loaders do not keep them reachable")
+          .isEmpty();
+      assertThat(interceptor.getTotals().getClassesDefined()).isEqualTo(totals.getClassesDefined());
+    }
+  }
+
+  public static class Isolated {
+
+    @RestrictiveClassloader(isolatePerTest = true, poolSize = 1)
+    public void isolated() {
+    }
+  }
+
+  private EvictingClassLoader newLoader(ClassVerdictCache verdicts) {
+    return new EvictingClassLoader(new ArrayList<>(), new EvictingStaticTransformer(false, null),
+        this.getClass().getClassLoader(), verdicts);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+
+public class TestClassVerdictCache {
+
+  private final AtomicInteger scans = new AtomicInteger();
+
+  private final ClassFileTransformer countingTransformer = new ClassFileTransformer() {
+
+    private final EvictingStaticTransformer delegate = new EvictingStaticTransformer(false, null);
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+      scans.incrementAndGet();
+      return delegate.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+  };
+
+  private EvictingClassLoader newLoader(ClassVerdictCache verdicts) {
+    return new EvictingClassLoader(new ArrayList<>(), countingTransformer, this.getClass().getClassLoader(), verdicts);
+  }
+
+  @Test
+  public void classesAreScannedOncePerCache() throws ClassNotFoundException {
+    ClassVerdictCache verdicts = new ClassVerdictCache();
+    EvictingClassLoader first = newLoader(verdicts);
+    Class<?> clean = first.loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThat(first.loadClass(ContainsStaticFinalLiteral.class.getName())).isSameAs(clean);
+    assertThatThrownBy(() -> first.loadClass(ContainsStaticLiteralNonFinal.class.getName()))
+        .isInstanceOf(ClassFormatError.class);
+    assertThatThrownBy(() -> first.loadClass(ContainsStaticLiteralNonFinal.class.getName()))
+        .isInstanceOf(ClassFormatError.class);
+    assertThat(scans.get()).isEqualTo(2);
+
+    EvictingClassLoader second = newLoader(verdicts);
+    assertThat(second.loadClass(ContainsStaticFinalLiteral.class.getName()))
+        .describedAs("Each loader still defines its own copy")
+        .isNotSameAs(clean);
+    assertThatThrownBy(() -> second.loadClass(ContainsStaticLiteralNonFinal.class.getName()))
+        .isInstanceOf(ClassFormatError.class)
+        .hasMessageContaining("Disallowed static field");
+    assertThat(second.getError(ContainsStaticLiteralNonFinal.class.getName())).contains("Disallowed static field");
+    assertThat(scans.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void invalidatedClassesAreScannedAgain() throws ClassNotFoundException {
+    ClassVerdictCache verdicts = new ClassVerdictCache();
+    newLoader(verdicts).loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThat(verdicts.isVerified(ContainsStaticFinalLiteral.class.getName())).isTrue();
+    verdicts.invalidate(ContainsStaticFinalLiteral.class.getName()::equals);
+    assertThat(verdicts.isVerified(ContainsStaticFinalLiteral.class.getName())).isFalse();
+    newLoader(verdicts).loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThat(scans.get()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.advisedtesting.classloader.ClasspathClassBytesSource;
+
+public class TestClasspathClassBytesSource {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path jar(Manifest manifest, String entry, byte[] contents) throws IOException {
+    Path jar = folder.newFile().toPath();
+    try (OutputStream out = Files.newOutputStream(jar);
+         JarOutputStream jarOut = manifest == null ? new JarOutputStream(out) : new JarOutputStream(out, manifest)) {
+      if (entry != null) {
+        jarOut.putNextEntry(new ZipEntry(entry));
+        jarOut.write(contents);
+        jarOut.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  @Test
+  public void readsDirectoriesAndJarsInClasspathOrder() throws IOException {
+    Path classes = folder.newFolder().toPath();
+    Files.createDirectories(classes.resolve("a"));
+    Files.write(classes.resolve("a/B.class"), new byte[] {1, 2, 3});
+    Path jar = jar(null, "a/B.class", new byte[] {4, 5});
+    Path other = jar(null, "a/C.class", new byte[] {6});
+
+    ClasspathClassBytesSource source = new ClasspathClassBytesSource(Arrays.asList(classes, jar, other),
+            this.getClass().getClassLoader());
+    assertThat(source.read("a/B.class")).containsExactly(1, 2, 3);
+    assertThat(source.read("a/C.class")).containsExactly(6);
+    assertThat(source.read("a/D.class")).isNull();
+    assertThat(source.read(TestClasspathClassBytesSource.class.getName().replace('.', '/') + ".class"))
+        .describedAs("Falls back to the loader for anything outside the roots")
+        .isNotEmpty();
+  }
+
+  @Test
+  public void indexesRootsButStillSeesNewlyCompiledClasses() throws IOException {
+    Path classes = folder.newFolder().toPath();
+    Files.createDirectories(classes.resolve("a"));
+    Files.write(classes.resolve("a/B.class"), new byte[] {1});
+    Path jar = jar(null, "a/C.class", new byte[] {2});
+    ClasspathClassBytesSource source = new ClasspathClassBytesSource(Arrays.asList(classes, jar),
+            this.getClass().getClassLoader());
+    assertThat(source.indexedClassCount()).isEqualTo(2);
+
+    Files.write(classes.resolve("a/D.class"), new byte[] {3});
+    assertThat(source.read("a/D.class")).containsExactly(3);
+    assertThat(source.read("a/C.class")).containsExactly(2);
+  }
+
+  @Test
+  public void followsManifestClassPath() throws IOException {
+    Path classes = folder.newFolder("classes").toPath();
+    Path dependency = jar(null, "a/C.class", new byte[] {6});
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH,
+            classes.toUri().toString() + " " + dependency.getFileName().toString());
+    Path booter = jar(manifest, null, null);
+
+    assertThat(ClasspathClassBytesSource.expand(booter.toString()))
+        .containsExactly(booter.toAbsolutePath().normalize(), classes.toAbsolutePath().normalize(),
+            dependency.toAbsolutePath().normalize());
+  }
+
+  @Test
+  public void readsTheVersionedEntriesOfMultiReleaseJars() throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+    Path jar = folder.newFile().toPath();
+    try (JarOutputStream jarOut = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+      jarOut.putNextEntry(new ZipEntry("a/B.class"));
+      jarOut.write(new byte[] {1});
+      jarOut.closeEntry();
+      jarOut.putNextEntry(new ZipEntry("META-INF/versions/9/a/B.class"));
+      jarOut.write(new byte[] {9});
+      jarOut.closeEntry();
+    }
+    ClasspathClassBytesSource source = new ClasspathClassBytesSource(Arrays.asList(jar), this.getClass().getClassLoader());
+    assertThat(source.read("a/B.class")).containsExactly(9);
+    assertThat(source.indexedClassFileNames()).containsExactly("a/B.class");
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.DelegationMatcher;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+
+public class TestDelegationMatcher {
+
+  @Test
+  public void agreesWithStartsWith() {
+    List<String> prefixes = new MinimalPackageSupplier().get().collect(Collectors.toList());
+    DelegationMatcher matcher = DelegationMatcher.of(prefixes);
+    List<String> all = Stream.concat(prefixes.stream(), Arrays.stream(EvictingClassLoader.DEFAULT_EXCLUDED_PACKAGES))
+        .collect(Collectors.toList());
+    for (String name : Arrays.asList("java.lang.String", "org.junit.Test", "org.junitx.Other", "org.jun",
+            "test.classloader.data.StaticInitBlockClass", "com.github.advisedtesting.classloader.EvictingClassLoader",
+            "com.github.advisedtesting.logback.CaptureLogging", "org.eclipsex.Foo", "", "j")) {
+      assertThat(matcher.delegates(name))
+          .describedAs(name)
+          .isEqualTo(all.stream().anyMatch(name::startsWith));
+    }
+  }
+
+  @Test
+  public void matchersAreSharedByConfiguration() {
+    DelegationMatcher first = DelegationMatcher.of(Arrays.asList("b.", "a."));
+    assertThat(DelegationMatcher.of(Arrays.asList("a.", "b.", "a."))).isSameAs(first);
+    assertThat(DelegationMatcher.of(Arrays.asList("a."))).isNotSameAs(first);
+    assertThat(first.getPrefixes()).contains("a.", "b.", "java.");
+  }
+}
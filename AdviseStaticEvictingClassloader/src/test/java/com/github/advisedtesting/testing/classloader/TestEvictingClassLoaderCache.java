@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingClassLoaderCache;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+
+import test.classloader.data.ContainsAssertion;
+import test.classloader.data.ContainsStaticFinalLiteral;
+
+public class TestEvictingClassLoaderCache {
+
+  private EvictingClassLoader newLoader() {
+    return new EvictingClassLoader(new ArrayList<>(), new EvictingStaticTransformer(false, null),
+        this.getClass().getClassLoader(), new ClassVerdictCache());
+  }
+
+  private EvictingClassLoader use(EvictingClassLoaderCache<String> cache, String key) {
+    try (EvictingClassLoaderCache<String>.Lease lease = cache.acquire(key, unused -> newLoader())) {
+      return lease.getLoader();
+    }
+  }
+
+  @Test
+  public void leastRecentlyUsedLoaderIsEvictedAndClosed() throws ClassNotFoundException {
+    EvictingClassLoaderCache<String> cache = new EvictingClassLoaderCache<>(2, Long.MAX_VALUE);
+    EvictingClassLoader first = use(cache, "first");
+    final EvictingClassLoader second = use(cache, "second");
+    assertThat(use(cache, "first")).isSameAs(first);
+    use(cache, "third");
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(use(cache, "first")).isSameAs(first);
+    assertThat(use(cache, "second")).isNotSameAs(second);
+    assertThatThrownBy(() -> second.loadClass(ContainsStaticFinalLiteral.class.getName()))
+        .isInstanceOf(ClassNotFoundException.class);
+  }
+
+  @Test
+  public void definedBytesBoundTheCache() throws ClassNotFoundException {
+    EvictingClassLoaderCache<String> cache = new EvictingClassLoaderCache<>(10, 1);
+    EvictingClassLoader first = use(cache, "first");
+    first.loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThat(first.getDefinedBytes()).isPositive();
+    use(cache, "second");
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(use(cache, "first")).isNotSameAs(first);
+  }
+
+  @Test
+  public void leasedLoadersAreClosedOnRelease() throws ClassNotFoundException {
+    EvictingClassLoaderCache<String> cache = new EvictingClassLoaderCache<>(1, Long.MAX_VALUE);
+    EvictingClassLoaderCache<String>.Lease lease = cache.acquire("first", unused -> newLoader());
+    use(cache, "second");
+    assertThat(lease.getLoader().loadClass(ContainsStaticFinalLiteral.class.getName())).isNotNull();
+    lease.close();
+    assertThatThrownBy(() -> lease.getLoader().loadClass(ContainsAssertion.class.getName()))
+        .isInstanceOf(ClassNotFoundException.class);
+    assertThat(lease.getLoader().loadClass(ContainsStaticFinalLiteral.class.getName())).isNotNull();
+  }
+
+  @Test
+  public void closeClosesEveryLoader() {
+    EvictingClassLoaderCache<String> cache = new EvictingClassLoaderCache<>(4, Long.MAX_VALUE);
+    EvictingClassLoader loader = use(cache, "first");
+    cache.close();
+    assertThat(cache.size()).isZero();
+    assertThatThrownBy(() -> loader.loadClass(ContainsStaticFinalLiteral.class.getName()))
+        .isInstanceOf(ClassNotFoundException.class);
+    assertThatThrownBy(() -> use(cache, "first")).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void staleLoadersAreEvicted() throws ClassNotFoundException {
+    EvictingClassLoaderCache<String> cache = new EvictingClassLoaderCache<>(4, Long.MAX_VALUE);
+    EvictingClassLoader stale = use(cache, "stale");
+    stale.loadClass(ContainsStaticFinalLiteral.class.getName());
+    final EvictingClassLoader fresh = use(cache, "fresh");
+    cache.evictIf(loader -> loader.getFootprint().contains(ContainsStaticFinalLiteral.class.getName()));
+    assertThat(stale.isClosed()).isTrue();
+    assertThat(use(cache, "stale")).isNotSameAs(stale);
+    assertThat(use(cache, "fresh")).isSameAs(fresh);
+  }
+}
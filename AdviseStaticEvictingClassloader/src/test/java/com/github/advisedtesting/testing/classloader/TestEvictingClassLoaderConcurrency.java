@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+
+import test.classloader.data.AppConfiguration;
+import test.classloader.data.ContainsAssertion;
+import test.classloader.data.ContainsEnumerationSwitchStatement;
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+import test.classloader.data.NestedContainsStaticNonFinalOrNonLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+public class TestEvictingClassLoaderConcurrency {
+
+  private static final int THREADS = 16;
+
+  private static final int ROUNDS = 50;
+
+  private final Map<String, AtomicInteger> scansByClass = new ConcurrentHashMap<>();
+
+  private final ClassFileTransformer countingTransformer = new ClassFileTransformer() {
+
+    private final EvictingStaticTransformer delegate = new EvictingStaticTransformer(false, null);
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+      scansByClass.computeIfAbsent(className, name -> new AtomicInteger()).incrementAndGet();
+      return delegate.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+    }
+  };
+
+  @Test
+  public void concurrentLoadsDefineEachClassOnce() throws Exception {
+    EvictingClassLoader loader = new EvictingClassLoader(new ArrayList<>(), countingTransformer,
+            this.getClass().getClassLoader(), new ClassVerdictCache());
+    assertThat(loader.isRegisteredAsParallelCapable()).isTrue();
+    List<String> clean = Arrays.asList(ContainsStaticFinalLiteral.class.getName(), ContainsAssertion.class.getName(),
+            ContainsEnumerationSwitchStatement.class.getName(), AppConfiguration.class.getName(),
+            NestedContainsStaticNonFinalOrNonLiteral.class.getName());
+    List<String> evicted = Arrays.asList(StaticInitBlockClass.class.getName(), ContainsStaticLiteralNonFinal.class.getName());
+    Map<String, Set<Class<?>>> definedByName = new ConcurrentHashMap<>();
+    CyclicBarrier barrier = new CyclicBarrier(THREADS);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < THREADS; thread++) {
+        results.add(executor.submit(() -> {
+          barrier.await();
+          int evictions = 0;
+          for (int round = 0; round < ROUNDS; round++) {
+            for (String name : clean) {
+              definedByName.computeIfAbsent(name, n -> ConcurrentHashMap.newKeySet()).add(loader.loadClass(name));
+            }
+            for (String name : evicted) {
+              try {
+                loader.loadClass(name);
+              } catch (ClassFormatError expected) {
+                evictions++;
+              }
+            }
+          }
+          return evictions;
+        }));
+      }
+      for (Future<Integer> result : results) {
+        assertThat(result.get(1, TimeUnit.MINUTES))
+            .describedAs("A LinkageError from a duplicate defineClass would have surfaced here")
+            .isEqualTo(ROUNDS * evicted.size());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(definedByName).hasSize(clean.size());
+    assertThat(definedByName.values()).allMatch(classes -> classes.size() == 1);
+    assertThat(scansByClass.keySet())
+        .describedAs("Each class is scanned, and so defined, by exactly one thread")
+        .containsExactlyInAnyOrderElementsOf(Stream.concat(clean.stream(), evicted.stream()).collect(Collectors.toList()));
+    assertThat(scansByClass.values()).allMatch(count -> count.get() == 1);
+    for (String name : evicted) {
+      assertThat(loader.getError(name)).isNotNull();
+    }
+  }
+}
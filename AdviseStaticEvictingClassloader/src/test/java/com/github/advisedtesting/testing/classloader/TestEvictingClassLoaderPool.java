@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingClassLoaderPool;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+import com.github.advisedtesting.junit4.Junit4AopClassRunner;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+
+public class TestEvictingClassLoaderPool {
+
+  private static final String PROPERTY_PREFIX = "advisedtesting.test.pool.";
+
+  private final Map<EvictingClassLoader, AtomicInteger> scansByLoader = new ConcurrentHashMap<>();
+
+  private EvictingClassLoader newLoader() {
+    AtomicInteger scans = new AtomicInteger();
+    EvictingStaticTransformer delegate = new EvictingStaticTransformer(false, null);
+    ClassFileTransformer counting = new ClassFileTransformer() {
+      @Override
+      public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+              ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+        scans.incrementAndGet();
+        return delegate.transform(loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
+      }
+    };
+    EvictingClassLoader loader = new EvictingClassLoader(new ArrayList<>(), counting, this.getClass().getClassLoader(),
+            new ClassVerdictCache());
+    scansByLoader.put(loader, scans);
+    return loader;
+  }
+
+  @Test
+  public void handsOutDistinctWarmedLoaders() throws ClassNotFoundException {
+    try (EvictingClassLoaderPool pool = new EvictingClassLoaderPool(this::newLoader, 2,
+            Arrays.asList(ContainsStaticFinalLiteral.class.getName(), "does.not.Exist"))) {
+      EvictingClassLoader first = pool.take();
+      EvictingClassLoader second = pool.take();
+      assertThat(first).isNotSameAs(second);
+      for (EvictingClassLoader loader : Arrays.asList(first, second)) {
+        assertThat(scansByLoader.get(loader).get()).isEqualTo(1);
+        assertThat(loader.loadClass(ContainsStaticFinalLiteral.class.getName()).getClassLoader()).isSameAs(loader);
+        assertThat(scansByLoader.get(loader).get())
+            .describedAs("Warm classes are defined before the loader is handed out")
+            .isEqualTo(1);
+      }
+    }
+  }
+
+  @Test
+  public void closesWarmedLoadersThatDoNotFit() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    List<EvictingClassLoader> built = new CopyOnWriteArrayList<>();
+    Supplier<EvictingClassLoader> factory = () -> {
+      if (calls.getAndIncrement() == 0) {
+        try {
+          release.await();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      EvictingClassLoader loader = newLoader();
+      built.add(loader);
+      return loader;
+    };
+    try (EvictingClassLoaderPool pool = new EvictingClassLoaderPool(factory, 1, new ArrayList<>())) {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (calls.get() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      EvictingClassLoader taken = pool.take();
+      release.countDown();
+      while ((built.size() < 3 || !built.get(2).isClosed()) && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(built).hasSize(3);
+      assertThat(built.get(0)).isSameAs(taken);
+      assertThat(taken.isClosed()).isFalse();
+      assertThat(built.get(1).isClosed()).describedAs("The first warmed loader is ready").isFalse();
+      assertThat(built.get(2).isClosed()).describedAs("A loader warmed while the pool is full is closed").isTrue();
+    }
+  }
+
+  @Test
+  public void eachTestGetsItsOwnLoader() {
+    try {
+      Result result = new JUnitCore().run(Isolated.class);
+      assertThat(result.getFailures()).isEmpty();
+      String first = System.getProperty(PROPERTY_PREFIX + "first");
+      String second = System.getProperty(PROPERTY_PREFIX + "second");
+      assertThat(first).startsWith(EvictingClassLoader.class.getName());
+      assertThat(second).startsWith(EvictingClassLoader.class.getName());
+      assertThat(first).isNotEqualTo(second);
+    } finally {
+      System.clearProperty(PROPERTY_PREFIX + "first");
+      System.clearProperty(PROPERTY_PREFIX + "second");
+    }
+  }
+
+  /**
+   * See {@link TestEvictingClassLoaderPool#eachTestGetsItsOwnLoader()} above, a system property is used as any static
+   * state in this class would be evicted, hence the constant is a literal.
+   */
+  @RunWith(Junit4AopClassRunner.class)
+  public static class Isolated {
+
+    private void record(String testName) {
+      ClassLoader loader = getClass().getClassLoader();
+      System.setProperty(PROPERTY_PREFIX + testName, loader.getClass().getName() + "@" + System.identityHashCode(loader));
+    }
+
+    @Test
+    @RestrictiveClassloader(isolatePerTest = true,
+        warmClasses = "com.github.advisedtesting.testing.classloader.TestEvictingClassLoaderPool$Isolated")
+    public void first() {
+      record("first");
+    }
+
+    @Test
+    @RestrictiveClassloader(isolatePerTest = true,
+        warmClasses = "com.github.advisedtesting.testing.classloader.TestEvictingClassLoaderPool$Isolated")
+    public void second() {
+      record("second");
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.advisedtesting.classloader.ClassBytesSource;
+import com.github.advisedtesting.classloader.GreenFootprints;
+
+public class TestGreenFootprints {
+
+  private static final List<Path> CLASSPATH = Arrays.asList(Paths.get("classes"));
+
+  private static final String TEST = "a.ATest#works";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, byte[]> classFiles = new HashMap<>();
+
+  private final ClassBytesSource classBytes = resourceName -> classFiles.get(resourceName);
+
+  private void passedWith(Path file) {
+    passedWith(file, CLASSPATH);
+  }
+
+  private void passedWith(Path file, List<Path> classpath) {
+    classFiles.put("a/ATest.class", "test".getBytes(StandardCharsets.UTF_8));
+    classFiles.put("a/A.class", "a".getBytes(StandardCharsets.UTF_8));
+    GreenFootprints footprints = new GreenFootprints(file, classBytes, classpath);
+    classFiles.put("a/config.properties", "a=1".getBytes(StandardCharsets.UTF_8));
+    footprints.passed(TEST, Arrays.asList("a.ATest", "a.A", "a.Missing"), Arrays.asList("a/config.properties"));
+    footprints.close();
+  }
+
+  @Test
+  public void unchangedFootprintsSurviveReopening() throws IOException {
+    Path file = folder.newFolder().toPath().resolve(GreenFootprints.FILE);
+    assertThat(new GreenFootprints(file, classBytes, CLASSPATH).isUnchanged(TEST)).isFalse();
+    passedWith(file);
+    assertThat(new GreenFootprints(file, classBytes, CLASSPATH).isUnchanged(TEST)).isTrue();
+    assertThat(new GreenFootprints(file, classBytes, Arrays.asList(Paths.get("classes"), Paths.get("more")))
+        .isUnchanged(TEST)).isFalse();
+  }
+
+  @Test
+  public void changedAddedOrFailedClassesRunAgain() throws IOException {
+    Path file = folder.newFolder().toPath().resolve(GreenFootprints.FILE);
+    passedWith(file);
+    classFiles.put("a/A.class", "changed".getBytes(StandardCharsets.UTF_8));
+    assertThat(new GreenFootprints(file, classBytes, CLASSPATH).isUnchanged(TEST)).isFalse();
+
+    passedWith(file);
+    classFiles.put("a/Missing.class", "added".getBytes(StandardCharsets.UTF_8));
+    assertThat(new GreenFootprints(file, classBytes, CLASSPATH).isUnchanged(TEST)).isFalse();
+
+    classFiles.remove("a/Missing.class");
+    classFiles.put("a/config.properties", "a=2".getBytes(StandardCharsets.UTF_8));
+    assertThat(new GreenFootprints(file, classBytes, CLASSPATH).isUnchanged(TEST))
+        .describedAs("A changed resource runs the tests that read it")
+        .isFalse();
+
+    passedWith(file);
+    GreenFootprints footprints = new GreenFootprints(file, classBytes, CLASSPATH);
+    assertThat(footprints.isUnchanged(TEST)).isTrue();
+    footprints.failed(TEST);
+    footprints.close();
+    assertThat(new GreenFootprints(file, classBytes, CLASSPATH).isUnchanged(TEST)).isFalse();
+  }
+
+  @Test
+  public void launcherJarsDoNotChangeTheClasspath() throws IOException {
+    Path file = folder.newFolder().toPath().resolve(GreenFootprints.FILE);
+    Path classes = folder.newFolder("classes").toPath();
+    Path dependency = jar(null, "a/B.class");
+    passedWith(file, Arrays.asList(launcher(), classes, dependency));
+    assertThat(new GreenFootprints(file, classBytes, Arrays.asList(launcher(), classes, dependency)).isUnchanged(TEST))
+        .isTrue();
+    Files.write(dependency, new byte[] {1}, StandardOpenOption.APPEND);
+    Files.setLastModifiedTime(dependency, FileTime.fromMillis(0));
+    assertThat(new GreenFootprints(file, classBytes, Arrays.asList(launcher(), classes, dependency)).isUnchanged(TEST))
+        .describedAs("A rebuilt jar changes the classpath")
+        .isFalse();
+  }
+
+  private Path launcher() throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "classes/");
+    return jar(manifest, null);
+  }
+
+  private Path jar(Manifest manifest, String entry) throws IOException {
+    Path jar = folder.newFile().toPath();
+    try (OutputStream out = Files.newOutputStream(jar);
+         JarOutputStream jarOut = manifest == null ? new JarOutputStream(out) : new JarOutputStream(out, manifest)) {
+      if (entry != null) {
+        jarOut.putNextEntry(new ZipEntry(entry));
+        jarOut.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassLoaderPolicy;
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.DelegationMatcher;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingClassLoaderCache;
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+import com.github.advisedtesting.classloader.ResettingStaticTransformer;
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+
+import test.classloader.data.ContainsStaticFinalNonLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+import test.classloader.data.InterfaceWithStaticState;
+
+public class TestResettingStaticTransformer {
+
+  private EvictingClassLoader newLoader() {
+    return new EvictingClassLoader(DelegationMatcher.of(new MinimalPackageSupplier().get().collect(Collectors.toList())),
+        new ResettingStaticTransformer(null), this.getClass().getClassLoader(), new ClassVerdictCache());
+  }
+
+  private static Field staticField(ClassLoader loader, Class<?> clazz) throws ReflectiveOperationException {
+    return Class.forName(clazz.getName(), true, loader).getField("o");
+  }
+
+  @Test
+  public void resetRestoresInitializedState() throws ReflectiveOperationException {
+    EvictingClassLoader loader = newLoader();
+    Field literal = staticField(loader, ContainsStaticLiteralNonFinal.class);
+    Field nonLiteral = staticField(loader, ContainsStaticFinalNonLiteral.class);
+    assertThat(Modifier.isFinal(nonLiteral.getModifiers())).isFalse();
+    final Object initial = nonLiteral.get(null);
+    literal.set(null, "changed");
+
+    loader.resetStaticState();
+    assertThat(literal.get(null)).isEqualTo("w00t");
+    assertThat(nonLiteral.get(null)).isNotNull().isNotSameAs(initial);
+  }
+
+  @Test
+  public void interfacesWithStaticStateAreStillEvicted() {
+    EvictingClassLoader loader = newLoader();
+    assertThatThrownBy(() -> loader.loadClass(InterfaceWithStaticState.class.getName()))
+        .isInstanceOf(ClassFormatError.class).hasMessageContaining(InterfaceWithStaticState.class.getName());
+  }
+
+  @Test
+  public void cachedLoaderIsResetWhenItsLastLeaseIsReleased() throws ReflectiveOperationException {
+    EvictingClassLoaderCache<String> cache = new EvictingClassLoaderCache<>(1, Long.MAX_VALUE);
+    EvictingClassLoaderCache<String>.Lease first = cache.acquire("reset", unused -> newLoader());
+    final EvictingClassLoaderCache<String>.Lease second = cache.acquire("reset", unused -> newLoader());
+    Field literal = staticField(first.getLoader(), ContainsStaticLiteralNonFinal.class);
+    literal.set(null, "changed");
+    first.close();
+    assertThat(literal.get(null)).isEqualTo("changed");
+    second.close();
+    assertThat(literal.get(null)).isEqualTo("w00t");
+    cache.close();
+  }
+
+  @Test
+  public void policiesResetWithSuppliersOmittingThisPackage() throws ReflectiveOperationException {
+    ClassLoaderPolicy policy = ClassLoaderPolicy.of(Resetting.class.getDeclaredMethod("resetting")
+        .getAnnotation(RestrictiveClassloader.class));
+    assertThat(policy.getDelegation().delegates(ResettingStaticTransformer.class.getName())).isTrue();
+    EvictingClassLoader loader = new EvictingClassLoader(policy.getDelegation(), new ResettingStaticTransformer(null),
+        this.getClass().getClassLoader(), new ClassVerdictCache());
+    Field literal = staticField(loader, ContainsStaticLiteralNonFinal.class);
+    literal.set(null, "changed");
+    loader.resetStaticState();
+    assertThat(literal.get(null)).isEqualTo("w00t");
+  }
+
+  public static class JunitOnlySupplier implements Supplier<Stream<String>> {
+
+    @Override
+    public Stream<String> get() {
+      return Stream.of("org.junit.");
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private static class Resetting {
+
+    @RestrictiveClassloader(resetStaticState = true, delegatingPackagesSuppliers = JunitOnlySupplier.class)
+    void resetting() {
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.DelegationMatcher;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.ResourceLookupCache;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+
+public class TestResourceLookupCache {
+
+  private static final String RESOURCE_NAME = ContainsStaticFinalLiteral.class.getName().replace('.', '/') + ".class";
+
+  private static final String MISSING = "test/classloader/data/missing.properties";
+
+  private final AtomicInteger lookups = new AtomicInteger();
+
+  private final ClassLoader parent = new ClassLoader(getClass().getClassLoader()) {
+
+    @Override
+    public URL getResource(String name) {
+      lookups.incrementAndGet();
+      return super.getResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+      lookups.incrementAndGet();
+      return super.getResources(name);
+    }
+  };
+
+  private EvictingClassLoader newLoader(ResourceLookupCache resourceLookups) {
+    return new EvictingClassLoader(DelegationMatcher.of(new ArrayList<>()), new EvictingStaticTransformer(), parent,
+        new ClassVerdictCache(), null, resourceLookups);
+  }
+
+  @Test
+  public void lookupsAreSharedBetweenLoaders() throws IOException {
+    ResourceLookupCache resourceLookups = new ResourceLookupCache(parent);
+    EvictingClassLoader first = newLoader(resourceLookups);
+    URL found = first.getResource(RESOURCE_NAME);
+    assertThat(found).isEqualTo(getClass().getClassLoader().getResource(RESOURCE_NAME));
+    assertThat(first.getResource(MISSING)).isNull();
+    assertThat(Collections.list(first.getResources(RESOURCE_NAME))).containsExactly(found);
+    try (InputStream in = first.getResourceAsStream(RESOURCE_NAME)) {
+      assertThat(in).isNotNull();
+    }
+    assertThat(lookups.get()).isEqualTo(3);
+
+    EvictingClassLoader second = newLoader(resourceLookups);
+    assertThat(second.getResource(RESOURCE_NAME)).isEqualTo(found);
+    assertThat(second.getResource(MISSING)).describedAs("Missing resources are remembered too").isNull();
+    assertThat(Collections.list(second.getResources(RESOURCE_NAME))).containsExactly(found);
+    assertThat(lookups.get()).isEqualTo(3);
+
+    resourceLookups.invalidate();
+    assertThat(second.getResource(MISSING)).isNull();
+    assertThat(lookups.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void loadersWithoutACacheAskTheirParent() {
+    EvictingClassLoader loader = newLoader(null);
+    loader.getResource(MISSING);
+    loader.getResource(MISSING);
+    assertThat(lookups.get()).isEqualTo(2);
+    assertThatThrownBy(() -> newLoader(new ResourceLookupCache(getClass().getClassLoader())))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
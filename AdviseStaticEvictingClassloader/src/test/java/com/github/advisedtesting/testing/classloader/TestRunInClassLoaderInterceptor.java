@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+import com.github.advisedtesting.classloader.RunInClassLoaderInterceptor;
+
+import test.classloader.data.FailsToReset;
+import test.classloader.shared.SharedValue;
+import test.classloader.shared.SharedValueHolder;
+
+public class TestRunInClassLoaderInterceptor {
+
+  private final RunInClassLoaderInterceptor interceptor = new RunInClassLoaderInterceptor();
+
+  @After
+  public void close() {
+    interceptor.close();
+    System.clearProperty(FailsToReset.INITIALIZED_PROPERTY);
+  }
+
+  @Test
+  public void cleanupFailuresAreSuppressedByTheTestFailure() throws Exception {
+    AssertionError failure = new AssertionError("test failed");
+    assertThatThrownBy(() -> interceptor.invoke(new LoadingInvocation(Resetting.class.getMethod("resetting"),
+        FailsToReset.class.getName()).failingWith(failure)))
+        .isSameAs(failure);
+    assertThat(failure.getSuppressed()).hasSize(1);
+    assertThat(failure.getSuppressed()[0]).isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining(FailsToReset.class.getName());
+  }
+
+  @Test
+  public void cleanupFailuresDoNotFailPassingTests() throws Throwable {
+    assertThat(interceptor.invoke(new LoadingInvocation(Resetting.class.getMethod("resetting"),
+        FailsToReset.class.getName()))).isNull();
+  }
+
+  @Test
+  public void loadersSurvivingAChangeKeepTheirSharedTier() throws Throwable {
+    assertThat(interceptor.invoke(new LoadingInvocation(Sharing.class.getMethod("sharing"),
+        SharedValueHolder.class.getName()))).isNull();
+    interceptor.classesChanged("test.classloader.unrelated.Changed"::equals);
+    Object value = interceptor.invoke(new LoadingInvocation(Sharing.class.getMethod("sharing"))
+        .calling(SharedValueHolder.class.getName(), "create"));
+    assertThat(value.getClass().getName()).isEqualTo(SharedValue.class.getName());
+    assertThat(value.getClass()).isNotSameAs(SharedValue.class);
+  }
+
+  public static class Sharing {
+
+    @RestrictiveClassloader(shareVerifiedClasses = true)
+    public void sharing() {
+    }
+  }
+
+  public static class Resetting {
+
+    @RestrictiveClassloader(resetStaticState = true)
+    public void resetting() {
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.DelegationMatcher;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+import com.github.advisedtesting.classloader.SharedVerifiedClassLoader;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.refers.RefersToData;
+import test.classloader.shared.SharedValue;
+import test.classloader.shared.SharedValueHolder;
+import test.classloader.sharedenum.Counter;
+
+public class TestSharedVerifiedClassLoader {
+
+  private final DelegationMatcher delegation = DelegationMatcher.of(new MinimalPackageSupplier().get()
+      .collect(Collectors.toList()));
+
+  private final ClassVerdictCache verdicts = new ClassVerdictCache();
+
+  private EvictingClassLoader newLoader(SharedVerifiedClassLoader tier) {
+    return new EvictingClassLoader(delegation, new EvictingStaticTransformer(false, null), this.getClass().getClassLoader(),
+        verdicts, tier);
+  }
+
+  @Test
+  public void packagesOfStatelessClassesAreDefinedOnce() throws ReflectiveOperationException {
+    SharedVerifiedClassLoader tier = new SharedVerifiedClassLoader(delegation, this.getClass().getClassLoader());
+    EvictingClassLoader first = newLoader(tier);
+    EvictingClassLoader second = newLoader(tier);
+    Class<?> holder = first.loadClass(SharedValueHolder.class.getName());
+    assertThat(holder.getClassLoader()).isSameAs(tier);
+    assertThat(second.loadClass(SharedValueHolder.class.getName())).isSameAs(holder);
+    Object value = holder.getMethod("create").invoke(holder.getConstructor().newInstance());
+    assertThat(value.getClass()).isSameAs(second.loadClass(SharedValue.class.getName()));
+    assertThat(first.getDefinedBytes()).isZero();
+    assertThat(tier.getMetrics().snapshot().getClassesDefined()).isEqualTo(2);
+  }
+
+  @Test
+  public void packagesWithStaticStateOrReferringToItAreDefinedPerLoader() throws ClassNotFoundException {
+    SharedVerifiedClassLoader tier = new SharedVerifiedClassLoader(delegation, this.getClass().getClassLoader());
+    EvictingClassLoader first = newLoader(tier);
+    EvictingClassLoader second = newLoader(tier);
+    Class<?> literal = first.loadClass(ContainsStaticFinalLiteral.class.getName());
+    assertThat(literal.getClassLoader()).isSameAs(first);
+    assertThat(second.loadClass(ContainsStaticFinalLiteral.class.getName())).isNotSameAs(literal);
+    Class<?> refers = first.loadClass(RefersToData.class.getName());
+    assertThat(refers.getClassLoader()).isSameAs(first);
+    assertThat(tier.getMetrics().snapshot().getClassesDefined()).isZero();
+  }
+
+  @Test
+  public void enumsAreDefinedPerLoader() throws ReflectiveOperationException {
+    SharedVerifiedClassLoader tier = new SharedVerifiedClassLoader(delegation, this.getClass().getClassLoader());
+    for (EvictingClassLoader loader : new EvictingClassLoader[] {newLoader(tier), newLoader(tier)}) {
+      Class<?> counter = loader.loadClass(Counter.class.getName());
+      assertThat(counter.getClassLoader()).isSameAs(loader);
+      Object instance = counter.getField(Counter.INSTANCE.name()).get(null);
+      assertThat(counter.getMethod("increment").invoke(instance))
+          .describedAs("A constant changed by an earlier loader's test is not seen")
+          .isEqualTo(1);
+    }
+    assertThat(tier.getMetrics().snapshot().getClassesDefined()).isZero();
+  }
+
+  @Test
+  public void closedTierSharesNothingMore() throws ClassNotFoundException {
+    SharedVerifiedClassLoader tier = new SharedVerifiedClassLoader(delegation, this.getClass().getClassLoader());
+    tier.close();
+    EvictingClassLoader loader = newLoader(tier);
+    assertThat(loader.loadClass(SharedValue.class.getName()).getClassLoader()).isSameAs(loader);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+import com.github.advisedtesting.classloader.StaticEvictionAgent;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+public class TestStaticEvictionAgent {
+
+  @Test
+  public void cleanAndDelegatedClassesAreUntouched() throws Exception {
+    StaticEvictionAgent agent = StaticEvictionAgent.fromArgs(null);
+    ClassLoader loader = new ClassLoader() { };
+    assertThat(agent.transform(loader, internalName(ContainsStaticFinalLiteral.class), null, null,
+        bytesOf(ContainsStaticFinalLiteral.class))).isNull();
+    assertThat(agent.transform(loader, internalName(StaticEvictionAgent.class), null, null,
+        bytesOf(StaticEvictionAgent.class))).isNull();
+    assertThat(StaticEvictionAgent.fromArgs(TestPackageSupplier.class.getName()).transform(loader,
+        internalName(StaticInitBlockClass.class), null, null, bytesOf(StaticInitBlockClass.class))).isNull();
+  }
+
+  @Test
+  public void evictedClassesFailToInitialize() throws Exception {
+    StaticEvictionAgent agent = StaticEvictionAgent.fromArgs(MinimalPackageSupplier.class.getName());
+    byte[] evicted = agent.transform(new ClassLoader() { }, internalName(StaticInitBlockClass.class), null, null,
+        bytesOf(StaticInitBlockClass.class));
+    assertThat(evicted).isNotNull();
+    assertThat(StaticEvictionAgent.getError(StaticInitBlockClass.class.getName()))
+        .contains("Static state found in class " + StaticInitBlockClass.class.getName());
+
+    DefiningLoader loader = new DefiningLoader();
+    Class<?> clazz = loader.define(StaticInitBlockClass.class.getName(), evicted);
+    assertThatThrownBy(() -> Class.forName(clazz.getName(), true, loader)).isInstanceOf(ClassFormatError.class)
+        .hasMessageContaining(StaticInitBlockClass.class.getName());
+    assertThatThrownBy(() -> Class.forName(clazz.getName(), true, loader)).isInstanceOf(NoClassDefFoundError.class);
+  }
+
+  private static String internalName(Class<?> clazz) {
+    return clazz.getName().replace('.', '/');
+  }
+
+  private static byte[] bytesOf(Class<?> clazz) throws IOException {
+    try (InputStream in = ClassLoader.getSystemResourceAsStream(internalName(clazz) + ".class")) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static class DefiningLoader extends ClassLoader {
+
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+import com.github.advisedtesting.classloader.DelegationMatcher;
+import com.github.advisedtesting.classloader.StaticStateAudit;
+import com.github.advisedtesting.classloader.StaticStateAudit.Report;
+import com.github.advisedtesting.classloader.VerdictStore;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+import test.classloader.data.NestedContainsStaticNonFinalOrNonLiteral;
+import test.classloader.data.StaticInitBlockClass;
+
+public class TestStaticStateAudit {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void auditsTheClasspathAndSeedsTheVerdictStore() throws IOException, URISyntaxException {
+    Path testClasses = Paths.get(StaticInitBlockClass.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    VerdictStore store = new VerdictStore(folder.newFolder().toPath());
+    StaticStateAudit audit = new StaticStateAudit(Collections.singletonList(testClasses),
+            DelegationMatcher.of(Collections.singletonList("com.github.advisedtesting.")), store);
+
+    Report report = audit.run();
+    assertThat(report.getClassesScanned()).isGreaterThan(10);
+    assertThat(report.getUnreadable()).isEmpty();
+    assertThat(report.getViolations())
+        .containsKeys(StaticInitBlockClass.class.getName(), ContainsStaticLiteralNonFinal.class.getName(),
+            NestedContainsStaticNonFinalOrNonLiteral.Nested.class.getName())
+        .doesNotContainKeys(ContainsStaticFinalLiteral.class.getName(), NestedContainsStaticNonFinalOrNonLiteral.class.getName());
+    assertThat(report.getViolations().keySet()).noneMatch(name -> name.startsWith("com.github.advisedtesting."));
+
+    StringBuilder json = new StringBuilder();
+    report.writeJson(json);
+    assertThat(json.toString())
+        .contains("\"className\": \"" + StaticInitBlockClass.class.getName() + "\"")
+        .contains("Disallowed <cinit> method")
+        .doesNotContain(ContainsStaticFinalLiteral.class.getName());
+
+    String resourceName = StaticInitBlockClass.class.getName().replace('.', '/') + ".class";
+    byte[] bytes = FileCopyUtils.copyToByteArray(this.getClass().getClassLoader().getResourceAsStream(resourceName));
+    assertThat(store.get(VerdictStore.keyOf(bytes))).isNotEmpty();
+  }
+}
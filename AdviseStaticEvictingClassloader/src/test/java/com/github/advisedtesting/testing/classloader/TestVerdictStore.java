@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+import com.github.advisedtesting.classloader.ClassContainsStaticInitialization;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.VerdictStore;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+
+public class TestVerdictStore {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] getBytesOfClass(Class<?> clazz) throws IOException {
+    String resourceName = clazz.getName().replaceAll("\\.", "/") + ".class";
+    return FileCopyUtils.copyToByteArray(this.getClass().getClassLoader().getResourceAsStream(resourceName));
+  }
+
+  @Test
+  public void verdictsSurviveReopeningAndIgnoreTornWrites() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    String clean = VerdictStore.keyOf(getBytesOfClass(ContainsStaticFinalLiteral.class));
+    String dirty = VerdictStore.keyOf(getBytesOfClass(ContainsStaticLiteralNonFinal.class));
+    VerdictStore store = new VerdictStore(directory);
+    store.put(clean, Collections.emptyList());
+    store.put(dirty, Arrays.asList("first", "second"));
+    try (Stream<Path> logs = Files.list(directory)) {
+      Path log = logs.findFirst().get();
+      Files.write(log, "half written line".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    VerdictStore reopened = new VerdictStore(directory);
+    assertThat(reopened.get(clean)).isEmpty();
+    assertThat(reopened.get(dirty)).containsExactly("first", "second");
+    assertThat(reopened.get(VerdictStore.keyOf(new byte[] {1, 2, 3}))).isNull();
+  }
+
+  @Test
+  public void appendsAfterATornWriteAreKept() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    String clean = VerdictStore.keyOf(getBytesOfClass(ContainsStaticFinalLiteral.class));
+    String dirty = VerdictStore.keyOf(getBytesOfClass(ContainsStaticLiteralNonFinal.class));
+    String later = VerdictStore.keyOf(new byte[] {1, 2, 3});
+    VerdictStore store = new VerdictStore(directory);
+    store.put(clean, Collections.emptyList());
+    store.put(dirty, Arrays.asList("partial error"));
+    Path log;
+    try (Stream<Path> logs = Files.list(directory)) {
+      log = logs.findFirst().get();
+    }
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - "error\n".length());
+    }
+
+    new VerdictStore(directory).put(later, Collections.emptyList());
+    VerdictStore reopened = new VerdictStore(directory);
+    assertThat(reopened.get(clean)).isEmpty();
+    assertThat(reopened.get(dirty)).describedAs("A torn verdict is not trusted").isNull();
+    assertThat(reopened.get(later)).isEmpty();
+  }
+
+  @Test
+  public void transformerConsultsStoreBeforeScanning() throws IOException {
+    VerdictStore store = new VerdictStore(folder.newFolder().toPath());
+    byte[] dirtyBytes = getBytesOfClass(ContainsStaticLiteralNonFinal.class);
+    store.put(VerdictStore.keyOf(dirtyBytes), Collections.emptyList());
+    EvictingStaticTransformer transformer = new EvictingStaticTransformer(false, store);
+    assertThat(transformer.transform(null, ContainsStaticLiteralNonFinal.class.getName(), null, null, dirtyBytes))
+        .describedAs("A recorded verdict is trusted")
+        .isNull();
+
+    byte[] cleanBytes = getBytesOfClass(ContainsStaticFinalLiteral.class);
+    transformer.transform(null, ContainsStaticFinalLiteral.class.getName(), null, null, cleanBytes);
+    assertThat(store.get(VerdictStore.keyOf(cleanBytes)))
+        .describedAs("Scanned classes are recorded")
+        .isEmpty();
+  }
+
+  @Test
+  public void scansOnlyUnrecordedClassesWithAFullScanner() throws IOException {
+    VerdictStore store = new VerdictStore(folder.newFolder().toPath());
+    byte[] dirtyBytes = getBytesOfClass(ContainsStaticLiteralNonFinal.class);
+    assertThat(store.scan(dirtyBytes, new ClassContainsStaticInitialization())).isNotEmpty();
+    assertThat(store.get(VerdictStore.keyOf(dirtyBytes))).isNotEmpty();
+    store.put(VerdictStore.keyOf(getBytesOfClass(ContainsStaticFinalLiteral.class)), Arrays.asList("recorded"));
+    assertThat(store.scan(getBytesOfClass(ContainsStaticFinalLiteral.class), new ClassContainsStaticInitialization()))
+        .containsExactly("recorded");
+    assertThatThrownBy(() -> store.scan(dirtyBytes, new ClassContainsStaticInitialization(true)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
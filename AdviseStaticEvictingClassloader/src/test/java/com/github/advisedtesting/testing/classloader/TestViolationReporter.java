@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.testing.classloader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.ViolationReporter;
+
+import test.classloader.data.ContainsStaticFinalLiteral;
+import test.classloader.data.ContainsStaticLiteralNonFinal;
+
+public class TestViolationReporter {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+  private void loadInTwoLoaders(ViolationReporter reporter) throws ClassNotFoundException {
+    EvictingStaticTransformer transformer = new EvictingStaticTransformer(true, null, reporter);
+    for (int i = 0; i < 2; i++) {
+      EvictingClassLoader loader = new EvictingClassLoader(new ArrayList<>(), transformer, getClass().getClassLoader(),
+          new ClassVerdictCache());
+      loader.loadClass(ContainsStaticLiteralNonFinal.class.getName());
+      loader.loadClass(ContainsStaticFinalLiteral.class.getName());
+    }
+  }
+
+  @Test
+  public void violationsAreReportedOncePerClassWhenClosed() throws ClassNotFoundException, IOException {
+    final Path report = folder.getRoot().toPath().resolve("reports/violations.json");
+    ViolationReporter reporter = new ViolationReporter(report, new PrintStream(console, true, "UTF-8"));
+    loadInTwoLoaders(reporter);
+    assertThat(console.size()).describedAs("Nothing is printed while loading").isZero();
+
+    reporter.close();
+    String summary = new String(console.toByteArray(), StandardCharsets.UTF_8);
+    assertThat(summary).contains("Static state found in 1 classes")
+        .contains(ContainsStaticLiteralNonFinal.class.getName() + " : 2 violations, loaded 2 times")
+        .doesNotContain(ContainsStaticFinalLiteral.class.getName())
+        .contains("Violations written to " + report);
+    String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    assertThat(json).startsWith("{\n  \"violations\": [")
+        .contains("{\"className\": \"" + ContainsStaticLiteralNonFinal.class.getName() + "\", \"loads\": 2")
+        .contains("\"errors\": [\"");
+
+    reporter.close();
+    assertThat(new String(console.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(summary);
+  }
+
+  @Test
+  public void violationsArePrintedWithoutAReportFile() throws ClassNotFoundException, IOException {
+    ViolationReporter reporter = new ViolationReporter(null, new PrintStream(console, true, "UTF-8"));
+    loadInTwoLoaders(reporter);
+    reporter.close();
+    assertThat(new String(console.toByteArray(), StandardCharsets.UTF_8))
+        .contains(ContainsStaticLiteralNonFinal.class.getName() + " : 2 violations, loaded 2 times")
+        .contains("  Error 1 : ");
+  }
+
+  @Test
+  public void loadsOfClassesWithReusedVerdictsAreCounted() throws ClassNotFoundException, IOException {
+    ViolationReporter reporter = new ViolationReporter(null, new PrintStream(console, true, "UTF-8"));
+    EvictingStaticTransformer transformer = new EvictingStaticTransformer(true, null, reporter);
+    ClassVerdictCache verdicts = new ClassVerdictCache();
+    for (int i = 0; i < 2; i++) {
+      new EvictingClassLoader(new ArrayList<>(), transformer, getClass().getClassLoader(), verdicts)
+          .loadClass(ContainsStaticLiteralNonFinal.class.getName());
+    }
+    assertThat(verdicts.isVerified(ContainsStaticLiteralNonFinal.class.getName())).isTrue();
+    reporter.close();
+    assertThat(new String(console.toByteArray(), StandardCharsets.UTF_8))
+        .contains(ContainsStaticLiteralNonFinal.class.getName() + " : 2 violations, loaded 2 times");
+  }
+}
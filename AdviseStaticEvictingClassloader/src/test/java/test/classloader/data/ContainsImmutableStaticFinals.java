@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package test.classloader.data;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ContainsImmutableStaticFinals {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContainsImmutableStaticFinals.class);
+
+  private static final Pattern WORDS = Pattern.compile("\\w+", Pattern.CASE_INSENSITIVE);
+
+  private static final List<String> NAMES = List.of("first", "second");
+
+  private static final Set<Integer> NUMBERS = Set.of(1, 2, 300);
+
+  private static final Map<String, Long> INDEX = Map.of("first", 1L, "second", 2L);
+
+  private static final List<String> NONE = Collections.emptyList();
+
+  public boolean matches(String name) {
+    LOGGER.debug("Matching {}", name);
+    return WORDS.matcher(name).matches() && NAMES.contains(name) && INDEX.containsKey(name) && !NONE.contains(name)
+        && NUMBERS.contains(name.length());
+  }
+}
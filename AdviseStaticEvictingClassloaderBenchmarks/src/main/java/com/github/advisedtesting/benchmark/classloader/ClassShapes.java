@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.benchmark.classloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+/**
+ * Class files the benchmarks feed to the scanner and class loader, either a fixture from
+ * <code>test.classloader.data</code> named by its simple name, or a large generated class.
+ * @author rex
+ */
+final class ClassShapes {
+
+  /**
+   * Fixture package, shared with AdviseStaticEvictingClassloader's tests.
+   */
+  static final String FIXTURE_PACKAGE = "test.classloader.data.";
+
+  /**
+   * Generated class with many instance fields and methods and no static state.
+   */
+  static final String GENERATED_CLEAN = "GeneratedClean";
+
+  /**
+   * Generated class with many instance members, plus a static field assigned in a long static initializer.
+   */
+  static final String GENERATED_STATIC = "GeneratedStatic";
+
+  private static final int GENERATED_MEMBERS = 500;
+
+  private ClassShapes() {
+  }
+
+  static String className(String shape) {
+    return FIXTURE_PACKAGE + shape;
+  }
+
+  static byte[] bytesOf(String shape) throws IOException {
+    if (GENERATED_CLEAN.equals(shape)) {
+      return generate(className(shape), GENERATED_MEMBERS, false);
+    }
+    if (GENERATED_STATIC.equals(shape)) {
+      return generate(className(shape), GENERATED_MEMBERS, true);
+    }
+    String resource = className(shape).replace('.', '/') + ".class";
+    try (InputStream in = ClassShapes.class.getClassLoader().getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException("No fixture " + resource);
+      }
+      return in.readAllBytes();
+    }
+  }
+
+  /**
+   * A class with one int field and one incrementing method per member.
+   * @param className binary name of the generated class.
+   * @param members number of fields and methods.
+   * @param staticState if true also add a static field, assigned once per member by the static initializer.
+   * @return the class file.
+   */
+  static byte[] generate(String className, int members, boolean staticState) {
+    String internalName = className.replace('.', '/');
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null);
+    MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(Opcodes.ALOAD, 0);
+    init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    init.visitInsn(Opcodes.RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+    for (int i = 0; i < members; i++) {
+      String field = "field" + i;
+      writer.visitField(Opcodes.ACC_PRIVATE, field, "I", null, null).visitEnd();
+      MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "increment" + i, "()I", null, null);
+      method.visitCode();
+      method.visitVarInsn(Opcodes.ALOAD, 0);
+      method.visitInsn(Opcodes.DUP);
+      method.visitFieldInsn(Opcodes.GETFIELD, internalName, field, "I");
+      method.visitInsn(Opcodes.ICONST_1);
+      method.visitInsn(Opcodes.IADD);
+      method.visitFieldInsn(Opcodes.PUTFIELD, internalName, field, "I");
+      method.visitVarInsn(Opcodes.ALOAD, 0);
+      method.visitFieldInsn(Opcodes.GETFIELD, internalName, field, "I");
+      method.visitInsn(Opcodes.IRETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+    if (staticState) {
+      writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "counter", "I", null, null).visitEnd();
+      MethodVisitor clinit = writer.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+      clinit.visitCode();
+      for (int i = 0; i < members; i++) {
+        clinit.visitLdcInsn(i);
+        clinit.visitFieldInsn(Opcodes.PUTSTATIC, internalName, "counter", "I");
+      }
+      clinit.visitInsn(Opcodes.RETURN);
+      clinit.visitMaxs(0, 0);
+      clinit.visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.benchmark.classloader;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.advisedtesting.classloader.RestrictiveClassloader;
+import com.github.advisedtesting.classloader.RunInClassLoaderInterceptor;
+import com.github.advisedtesting.core.ContextAwareMethodInvocation;
+import com.github.advisedtesting.core.ObjectFactory;
+
+/**
+ * Overhead {@link RunInClassLoaderInterceptor#invoke(MethodInvocation)} adds to a test method that does nothing, with a
+ * shared class loader and with a pooled loader per test, against calling the method directly.
+ * @author rex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InterceptorBenchmark {
+
+  private RunInClassLoaderInterceptor interceptor;
+
+  private ContextAwareMethodInvocation shared;
+
+  private ContextAwareMethodInvocation isolated;
+
+  @RestrictiveClassloader
+  public void sharedLoader() {
+  }
+
+  @RestrictiveClassloader(isolatePerTest = true)
+  public void isolatedLoader() {
+  }
+
+  @Setup
+  public void setup() throws NoSuchMethodException {
+    interceptor = new RunInClassLoaderInterceptor();
+    shared = new NoOpInvocation(InterceptorBenchmark.class.getMethod("sharedLoader"));
+    isolated = new NoOpInvocation(InterceptorBenchmark.class.getMethod("isolatedLoader"));
+  }
+
+  @TearDown
+  public void tearDown() {
+    interceptor.close();
+  }
+
+  @Benchmark
+  public Object baseline() throws Throwable {
+    return shared.proceed();
+  }
+
+  @Benchmark
+  public Object sharedClassLoader() throws Throwable {
+    return interceptor.invoke(shared);
+  }
+
+  @Benchmark
+  public Object classLoaderPerTest() throws Throwable {
+    return interceptor.invoke(isolated);
+  }
+
+  /**
+   * Stands in for the runner's invocation of a test method, proceeding does nothing.
+   */
+  private static final class NoOpInvocation implements ContextAwareMethodInvocation {
+
+    private final Method method;
+
+    private final Annotation annotation;
+
+    private NoOpInvocation(Method method) {
+      this.method = method;
+      this.annotation = method.getAnnotation(RestrictiveClassloader.class);
+    }
+
+    @Override
+    public Method getMethod() {
+      return method;
+    }
+
+    @Override
+    public Object[] getArguments() {
+      return new Object[0];
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+      return method;
+    }
+
+    @Override
+    public Object getThis() {
+      return null;
+    }
+
+    @Override
+    public AccessibleObject getStaticPart() {
+      return method;
+    }
+
+    @Override
+    public void registerObjectFactory(ObjectFactory factory) {
+    }
+
+    @Override
+    public ObjectFactory getCurrentContextFactory() {
+      return null;
+    }
+
+    @Override
+    public Annotation getTargetAnnotation() {
+      return annotation;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.benchmark.classloader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.advisedtesting.classloader.ClassVerdictCache;
+import com.github.advisedtesting.classloader.DelegationMatcher;
+import com.github.advisedtesting.classloader.EvictingClassLoader;
+import com.github.advisedtesting.classloader.EvictingStaticTransformer;
+import com.github.advisedtesting.classloader.MinimalPackageSupplier;
+
+/**
+ * <p>
+ * Throughput of {@link EvictingClassLoader#loadClass(String)}: delegated to the parent, already defined, defined by a
+ * new loader with the verdict cached, and defined by a new loader that has to scan the class as well.
+ * </p>
+ * <p>
+ * The last two create a loader per operation, as per test isolation does, so they include that cost.
+ * </p>
+ * @author rex
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoadClassBenchmark {
+
+  private static final String DELEGATED = "org.springframework.asm.ClassReader";
+
+  @Param({"ContainsStaticFinalLiteral", "ContainsAssertion", "AppConfiguration"})
+  public String fixture;
+
+  private String className;
+
+  private DelegationMatcher delegation;
+
+  private EvictingStaticTransformer transformer;
+
+  private ClassVerdictCache warmVerdicts;
+
+  private EvictingClassLoader loader;
+
+  @Setup
+  public void setup() throws ClassNotFoundException {
+    className = ClassShapes.className(fixture);
+    delegation = DelegationMatcher.of(new MinimalPackageSupplier().get().collect(Collectors.toList()));
+    transformer = new EvictingStaticTransformer(false, null);
+    warmVerdicts = new ClassVerdictCache();
+    loader = newLoader(warmVerdicts);
+    loader.loadClass(className);
+    loader.loadClass(DELEGATED);
+  }
+
+  private EvictingClassLoader newLoader(ClassVerdictCache verdicts) {
+    return new EvictingClassLoader(delegation, transformer, LoadClassBenchmark.class.getClassLoader(), verdicts);
+  }
+
+  @Benchmark
+  public Class<?> delegated() throws ClassNotFoundException {
+    return loader.loadClass(DELEGATED);
+  }
+
+  @Benchmark
+  public Class<?> alreadyDefined() throws ClassNotFoundException {
+    return loader.loadClass(className);
+  }
+
+  @Benchmark
+  public Class<?> defineInNewLoader() throws ClassNotFoundException {
+    return newLoader(warmVerdicts).loadClass(className);
+  }
+
+  @Benchmark
+  public Class<?> scanAndDefineInNewLoader() throws ClassNotFoundException {
+    return newLoader(new ClassVerdictCache()).loadClass(className);
+  }
+
+  /**
+   * The whole fixture set, the order of a typical test touching several classes.
+   * @return the classes defined.
+   * @throws ClassNotFoundException if a fixture is missing.
+   */
+  @Benchmark
+  public List<Class<?>> defineFixturesInNewLoader() throws ClassNotFoundException {
+    EvictingClassLoader fresh = newLoader(warmVerdicts);
+    List<Class<?>> classes = new ArrayList<>();
+    for (String each : new String[] {"ContainsStaticFinalLiteral", "ContainsAssertion", "AppConfiguration",
+        "ContainsEnumerationSwitchStatement"}) {
+      classes.add(fresh.loadClass(ClassShapes.className(each)));
+    }
+    return classes;
+  }
+}
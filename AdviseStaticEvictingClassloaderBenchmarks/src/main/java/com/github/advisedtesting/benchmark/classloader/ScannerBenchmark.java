@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ * Copyright © 2016 AdvisedTesting
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.advisedtesting.benchmark.classloader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.advisedtesting.classloader.ClassContainsStaticInitialization;
+
+/**
+ * Cost of {@link ClassContainsStaticInitialization#apply(byte[])} per class shape, in the full and fail fast modes.
+ * @author rex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScannerBenchmark {
+
+  @Param({"ContainsStaticFinalLiteral", "ContainsAssertion", "ContainsEnumerationSwitchStatement", "AppConfiguration",
+      "ContainsStaticLiteralNonFinal", "ContainsStaticFinalNonLiteral", "StaticInitBlockClass",
+      ClassShapes.GENERATED_CLEAN, ClassShapes.GENERATED_STATIC})
+  public String shape;
+
+  @Param({"full", "failFast"})
+  public String mode;
+
+  private byte[] bytes;
+
+  private ClassContainsStaticInitialization scanner;
+
+  @Setup
+  public void setup() throws IOException {
+    bytes = ClassShapes.bytesOf(shape);
+    scanner = new ClassContainsStaticInitialization("failFast".equals(mode));
+  }
+
+  @Benchmark
+  public List<String> apply() {
+    return scanner.apply(bytes);
+  }
+
+  /**
+   * Formatting is deferred until the messages are read, this includes it.
+   * @return the formatted messages.
+   */
+  @Benchmark
+  public String applyAndFormat() {
+    return String.join("\n", scanner.apply(bytes));
+  }
+}
@@ -99,7 +99,7 @@ public class Junit4AopClassRunner extends BlockJUnit4ClassRunner {
     DelayedConstructionStatement delayedStatement = new DelayedConstructionStatement(frameworkMethod, targetClass, registrar);
     Statement statement = delayedStatement;
     for (Annotation annotation : annotations) {
-      statement = new AdvisedStatement(statement, CONTEXT, registrar, annotation);
+      statement = new AdvisedStatement(statement, CONTEXT, registrar, annotation, frameworkMethod.getMethod());
     }
     try {
       statement.evaluate();
@@ -131,13 +131,28 @@ public class Junit4AopClassRunner extends BlockJUnit4ClassRunner {
     private final TestContext context;
     private final ProviderAwareObjectFactoryAggregate registry;
     private final Annotation annotation;
+    private final Method method;
 
     public AdvisedStatement(Statement advised, TestContext context, ProviderAwareObjectFactoryAggregate registry,
             Annotation annotation) {
+      this(advised, context, registry, annotation, null);
+    }
+
+    /**
+     * Advise a statement running a test method.
+     * @param advised the statement to run inside the advice.
+     * @param context supplies the advice.
+     * @param registry collects the object factories registered by the advice.
+     * @param annotation selects the advice.
+     * @param method the test method, as loaded by the runner, returned by the invocation's getMethod(), may be null.
+     */
+    public AdvisedStatement(Statement advised, TestContext context, ProviderAwareObjectFactoryAggregate registry,
+            Annotation annotation, Method method) {
       this.advised = advised;
       this.context = context;
       this.registry = registry;
       this.annotation = annotation;
+      this.method = method;
     }
 
     @Override
@@ -179,7 +194,7 @@ public class Junit4AopClassRunner extends BlockJUnit4ClassRunner {
 
         @Override
         public Method getMethod() {
-          return null;
+          return method;
         }
 
         @Override